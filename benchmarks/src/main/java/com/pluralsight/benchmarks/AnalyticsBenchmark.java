@@ -0,0 +1,75 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.LedgerAnalytics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The analytics reports over the whole ledger, run in a pool of -p threads=... workers to see how they scale
+ * with cores. Parallel streams started from a pool's worker run in that pool.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private LedgerAnalytics analytics;
+
+    @Setup(Level.Trial)
+    public void setUp(LedgerState state) {
+        pool = new ForkJoinPool(threads);
+        analytics = new LedgerAnalytics(state.store, state.dateIndex);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public LedgerAnalytics.VendorSpend vendorSpend() throws Exception {
+        return inPool(() -> analytics.vendorSpend(null, null));
+    }
+
+    @Benchmark
+    public LedgerAnalytics.VendorSpend topVendors() throws Exception {
+        return inPool(() -> analytics.topVendors(null, null, 10));
+    }
+
+    @Benchmark
+    public LedgerAnalytics.MonthlyFlow monthlyFlow() throws Exception {
+        return inPool(() -> analytics.monthlyFlow(null, null));
+    }
+
+    @Benchmark
+    public int[] largestTransactions() throws Exception {
+        return inPool(() -> analytics.largestTransactions(null, null, 100));
+    }
+
+    private <T> T inPool(Supplier<T> report) throws ExecutionException, InterruptedException {
+        return pool.submit(report::get).get();
+    }
+}
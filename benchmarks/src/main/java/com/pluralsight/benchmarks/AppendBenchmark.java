@@ -0,0 +1,68 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.JournalWriter;
+import com.pluralsight.LedgerStore;
+import com.pluralsight.VendorIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One deposit as addDeposit does it: add to the store, update the vendor index, format the line
+ * and append it through the journal under each sync policy.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AppendBenchmark {
+
+    @Param({"PER_RECORD", "TIME_WINDOW", "ON_SHUTDOWN"})
+    public JournalWriter.SyncPolicy policy;
+
+    private Path file;
+    private JournalWriter journal;
+    private LedgerStore store;
+    private VendorIndex vendorIndex;
+    private int counter;
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        file = Files.createTempFile("append-bench", ".csv");
+        journal = new JournalWriter(file, policy, 20);
+        store = new LedgerStore();
+        vendorIndex = new VendorIndex(store);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        journal.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int append() throws IOException {
+        int n = counter++;
+        int row = store.add(20_000 + n / 1000, n % 86_400, "Benchmark deposit", "Vendor " + (n & 63), 1_000 + n % 500);
+        vendorIndex.sync();
+        journal.append(store.toCsvLine(row));
+        return row;
+    }
+}
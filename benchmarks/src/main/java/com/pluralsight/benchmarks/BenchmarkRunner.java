@@ -0,0 +1,25 @@
+package com.pluralsight.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar: the normal JMH command line with the GC profiler always on,
+ * so every result has throughput, the SampleTime percentiles (p99) and the allocation rate.
+ * <p>
+ * Example: java -jar target/benchmarks.jar Load -p rows=50000000
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new org.openjdk.jmh.runner.Runner(options).run();
+    }
+}
@@ -0,0 +1,54 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.LedgerExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export of the whole ledger newest first to a file next to the generated ledgers, one benchmark per file name
+ * so CSV, JSON Lines and their gzipped variants are compared. Divide the rows by the time for rows per second.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    @Param({"export.csv", "export.jsonl", "export.csv.gz", "export.jsonl.gz"})
+    public String fileName;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp(LedgerState state) {
+        file = state.file.resolveSibling(fileName);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long export(LedgerState state) throws IOException {
+        return LedgerExporter.export(state.store, state.dateIndex.newestFirst(), null, null, file);
+    }
+}
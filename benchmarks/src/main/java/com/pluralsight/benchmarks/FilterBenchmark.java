@@ -0,0 +1,69 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.DateIndex;
+import com.pluralsight.QueryEngine;
+import com.pluralsight.TransactionQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The report filters: a one month date range, an exact vendor lookup, and a two word description search
+ * through the description index against a scan of every description as the baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final int MONTH_START = (int) LocalDate.of(2024, 3, 1).toEpochDay();
+    private static final int MONTH_END = (int) LocalDate.of(2024, 3, 31).toEpochDay();
+
+    @Benchmark
+    public void dateRange(LedgerState state, Blackhole blackhole) {
+        DateIndex.View view = state.dateIndex.view();
+        int from = view.lowerBound(MONTH_START);
+        int to = view.upperBound(MONTH_END);
+        for (int position = from; position < to; position++) {
+            blackhole.consume(view.rowAt(position));
+        }
+    }
+
+    @Benchmark
+    public void vendor(LedgerState state, Blackhole blackhole) {
+        for (int row : state.vendorIndex.find("starbucks")) {
+            blackhole.consume(row);
+        }
+    }
+
+    @Benchmark
+    public QueryEngine.Result descriptionIndex(LedgerState state) {
+        TransactionQuery query = new TransactionQuery();
+        query.setDescription("invoice paid");
+        return new QueryEngine(state.store, state.dateIndex, state.vendorIndex, state.descriptionIndex).execute(query);
+    }
+
+    /// the same search without the index: the text of every row is searched.
+    @Benchmark
+    public int descriptionScan(LedgerState state) {
+        int matches = 0;
+        for (int row = 0; row < state.store.size(); row++) {
+            String description = state.store.getDescription(row).toLowerCase(Locale.ROOT);
+            if (description.contains("invoice") && description.contains("paid")) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,114 @@
+package com.pluralsight.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic ledgers in the transactions.csv format.
+ * Output depends only on the row count and seed. Rows are in date order across the chosen number of years,
+ * vendors follow a Zipf-like skew (a few vendors take most rows), about one row in ten is a deposit.
+ * <p>
+ * Usage: LedgerGenerator &lt;rows&gt; &lt;file&gt; [seed] [years]
+ */
+public class LedgerGenerator {
+
+    static final long DEFAULT_SEED = 42L;
+    static final int DEFAULT_YEARS = 5;
+
+    private static final String[] PAYEES = {
+            "Amazon", "Walmart", "Starbucks", "Shell", "Target", "Costco", "Netflix", "Uber", "ExxonMobil", "Best Buy",
+            "Home Depot", "Whole Foods", "ABC Apartments", "Adobe", "Udemy", "GoDaddy", "Staples", "EZPass",
+            "Anytime Fitness", "Cheesecake Factory", "Pizzeria Italia", "Mario's Barber Shop", "Spotify", "Apple",
+            "Delta Air Lines", "Marriott", "CVS Pharmacy", "Walgreens", "Trader Joe's", "Chipotle"
+    };
+    private static final String[] PAYMENT_DESCRIPTIONS = {
+            "Groceries and household items", "Coffee and pastry", "Fuel purchase", "Online order", "Dinner with client",
+            "Monthly subscription", "Office supplies", "Monthly rent payment", "Ride to airport", "Pharmacy"
+    };
+    private static final String[] PAYERS = {"Employer", "Acme Corp", "Client Co.", "ABC Company", "Freelance Client"};
+    private static final String[] DEPOSIT_DESCRIPTIONS = {"Payroll Deposit", "Invoice paid", "Refund", "Reimbursement"};
+    /// long tail of vendors beyond the named ones, named "Vendor 123".
+    private static final int TAIL_VENDORS = 2000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LedgerGenerator <rows> <file> [seed] [years]");
+            System.exit(2);
+        }
+        long rows = Long.parseLong(args[0].replace("_", ""));
+        Path file = Path.of(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        int years = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_YEARS;
+
+        long start = System.nanoTime();
+        write(file, rows, seed, years);
+        System.out.printf("Wrote %,d rows (%,d bytes) to %s in %d ms%n",
+                rows, Files.size(file), file, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Write a ledger of the given size covering the given number of years up to 2025-12-31.
+     */
+    public static void write(Path file, long rows, long seed, int years) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDate end = LocalDate.of(2025, 12, 31);
+        long firstDay = end.minusYears(years).toEpochDay();
+        long days = end.toEpochDay() - firstDay + 1;
+        long totalSeconds = days * 86_400L;
+
+        StringBuilder line = new StringBuilder(96);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 20)) {
+            for (long i = 0; i < rows; i++) {
+                /// spread rows evenly over the period, so the file is in date order.
+                long second = rows == 1 ? 0 : i * (totalSeconds - 1) / (rows - 1);
+                LocalDate date = LocalDate.ofEpochDay(firstDay + second / 86_400L);
+                int secondOfDay = (int) (second % 86_400L);
+
+                line.setLength(0);
+                line.append(date).append('|');
+                appendTime(line, secondOfDay);
+                line.append('|');
+                if (random.nextInt(10) == 0) {
+                    line.append(DEPOSIT_DESCRIPTIONS[random.nextInt(DEPOSIT_DESCRIPTIONS.length)]).append('|')
+                            .append(PAYERS[random.nextInt(PAYERS.length)]).append('|');
+                    appendCents(line, 10_000 + random.nextLong(500_000));
+                } else {
+                    line.append(PAYMENT_DESCRIPTIONS[random.nextInt(PAYMENT_DESCRIPTIONS.length)]).append('|')
+                            .append(vendor(random)).append('|');
+                    appendCents(line, -(100 + random.nextLong(random.nextInt(20) == 0 ? 300_000 : 15_000)));
+                }
+                line.append('\n');
+                out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /// Zipf-like pick: rank r is chosen with weight about 1/r over named vendors then the long tail.
+    private static String vendor(SplittableRandom random) {
+        int total = PAYEES.length + TAIL_VENDORS;
+        double u = random.nextDouble();
+        int rank = (int) Math.floor(Math.pow(total + 1, u)) - 1;
+        rank = Math.min(Math.max(rank, 0), total - 1);
+        return rank < PAYEES.length ? PAYEES[rank] : "Vendor " + (rank - PAYEES.length);
+    }
+
+    private static void appendTime(StringBuilder sb, int secondOfDay) {
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+        sb.append(hour < 10 ? "0" : "").append(hour).append(':')
+                .append(minute < 10 ? "0" : "").append(minute).append(':')
+                .append(second < 10 ? "0" : "").append(second);
+    }
+
+    private static void appendCents(StringBuilder sb, long cents) {
+        long abs = Math.abs(cents);
+        sb.append(cents < 0 ? "-" : "").append(abs / 100).append('.').append(abs % 100 < 10 ? "0" : "").append(abs % 100);
+    }
+}
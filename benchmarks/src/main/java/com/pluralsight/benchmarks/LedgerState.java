@@ -0,0 +1,45 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.CsvLoader;
+import com.pluralsight.DateIndex;
+import com.pluralsight.DescriptionIndex;
+import com.pluralsight.LedgerStore;
+import com.pluralsight.VendorIndex;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A generated ledger loaded once per trial, with its indexes built.
+ * Sizes from 10k to 50M rows are picked with -p rows=...
+ */
+@State(Scope.Benchmark)
+public class LedgerState {
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    public Path file;
+    public LedgerStore store;
+    public DateIndex dateIndex;
+    public VendorIndex vendorIndex;
+    public DescriptionIndex descriptionIndex;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        file = Ledgers.ensure(rows);
+        store = new LedgerStore();
+        CsvLoader.load(file, store);
+        dateIndex = new DateIndex(store);
+        dateIndex.sync();
+        vendorIndex = new VendorIndex(store);
+        vendorIndex.sync();
+        descriptionIndex = new DescriptionIndex(store);
+        descriptionIndex.sync();
+    }
+}
@@ -0,0 +1,27 @@
+package com.pluralsight.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generated ledger files shared by the benchmarks, written once per size and reused across runs.
+ * The directory is -Dbench.dir or "ledgers" under the working directory.
+ */
+final class Ledgers {
+
+    private Ledgers() {
+    }
+
+    static Path ensure(int rows) throws IOException {
+        Path dir = Path.of(System.getProperty("bench.dir", "ledgers"));
+        Files.createDirectories(dir);
+        Path file = dir.resolve("ledger-" + rows + ".csv");
+        if (!Files.exists(file)) {
+            Path temp = dir.resolve(file.getFileName() + ".tmp");
+            LedgerGenerator.write(temp, rows, LedgerGenerator.DEFAULT_SEED, LedgerGenerator.DEFAULT_YEARS);
+            Files.move(temp, file);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,44 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.CsvLoader;
+import com.pluralsight.DateIndex;
+import com.pluralsight.LedgerStore;
+import com.pluralsight.MappedLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full parse of a generated transactions file into an empty store, as done by loadTransactions,
+ * against lazy mode which only maps the file and builds the offset and date indexes.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Benchmark
+    public LedgerStore load(LedgerState state) throws IOException {
+        LedgerStore store = new LedgerStore();
+        CsvLoader.load(state.file, store);
+        return store;
+    }
+
+    @Benchmark
+    public DateIndex openLazy(LedgerState state) throws IOException {
+        try (MappedLedger mapped = MappedLedger.open(state.file)) {
+            DateIndex dates = new DateIndex(mapped);
+            dates.sync();
+            return dates;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.LedgerRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row rendering: one page of 50 rows through LedgerRenderer, and the old per row Transaction.toString path.
+ * Output goes to a discarding stream so the terminal is not measured.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    @Param({"50"})
+    public int pageSize;
+
+    private LedgerRenderer renderer;
+    private LedgerRenderer.RowSource page;
+
+    @Setup(Level.Trial)
+    public void setUp(LedgerState state) {
+        renderer = new LedgerRenderer(state.store, OutputStream.nullOutputStream());
+        int[] rows = new int[Math.min(pageSize, state.store.size())];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = state.store.size() - 1 - i;
+        }
+        page = LedgerRenderer.RowSource.of(rows);
+    }
+
+    @Benchmark
+    public void renderPage() throws IOException {
+        renderer.render(page, 0, page.size());
+    }
+
+    @Benchmark
+    public int transactionToString(LedgerState state) {
+        int length = 0;
+        for (int i = 0; i < page.size(); i++) {
+            length += state.store.get(page.rowAt(i)).toString().length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,150 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.JournalWriter;
+import com.pluralsight.LatencyHistogram;
+import com.pluralsight.Ledger;
+import com.pluralsight.LedgerServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Load test of LedgerServer: a copy of a generated ledger is served in process and many client threads send
+ * a mix of ledger pages, vendor lookups, searches, reports and payments over keep-alive connections for a while,
+ * then requests per second and latency percentiles are printed. Not a JMH benchmark, the clients are the load.
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar com.pluralsight.benchmarks.ServerLoadTest [clients] [seconds] [rows] [write%]
+ */
+public class ServerLoadTest {
+
+    /// mostly vendors from the generator's long tail, a dashboard asks for one vendor's page, not all of Amazon.
+    private static final String[] VENDORS = {"Netflix", "Vendor 17", "Vendor 256", "Vendor 1234", "Vendor 1999"};
+
+    /// the generator's default five years end with 2025.
+    private static final LocalDate FIRST_DAY = LocalDate.of(2021, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int rows = args.length > 2 ? Integer.parseInt(args[2].replace("_", "")) : 100_000;
+        int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        /// one kept-alive connection per client rather than the default of five shared ones.
+        System.setProperty("http.maxConnections", Integer.toString(clients));
+
+        Path dir = Files.createTempDirectory("ledger-server-load");
+        Path csv = dir.resolve("transactions.csv");
+        Files.copy(Ledgers.ensure(rows), csv, StandardCopyOption.REPLACE_EXISTING);
+        try (Ledger book = new Ledger(csv)) {
+            book.load();
+            book.openJournal(JournalWriter.SyncPolicy.parse(System.getProperty("tracker.journal.sync")),
+                    Long.getLong("tracker.journal.windowMillis", 50L));
+            try (LedgerServer server = new LedgerServer(book, 0)) {
+                String base = "http://127.0.0.1:" + server.getPort();
+                System.out.println("Serving " + rows + " rows on " + base + " using "
+                        + (server.isVirtualThreads() ? "virtual threads" : "a thread pool") + ", " + clients
+                        + " clients for " + seconds + "s, " + writePercent + "% payments");
+
+                /// a short warm up, then the measured run.
+                run(base, clients, Math.min(3, seconds), writePercent, new LatencyHistogram(), new LongAdder());
+                LatencyHistogram latency = new LatencyHistogram();
+                LongAdder errors = new LongAdder();
+                long started = System.nanoTime();
+                run(base, clients, seconds, writePercent, latency, errors);
+                double elapsed = (System.nanoTime() - started) / 1e9;
+
+                System.out.printf("requests %d, errors %d, %.0f requests/s%n", latency.getCount(), errors.sum(),
+                        latency.getCount() / elapsed);
+                System.out.printf("latency mean %s, p50 %s, p99 %s, p99.9 %s, max %s%n", millis(latency.getMeanNanos()),
+                        millis(latency.percentile(0.5)), millis(latency.percentile(0.99)),
+                        millis(latency.percentile(0.999)), millis(latency.getMaxNanos()));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(String base, int clients, int seconds, int writePercent, LatencyHistogram latency,
+                            LongAdder errors) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int client = 0; client < clients; client++) {
+            SplittableRandom random = new SplittableRandom(client);
+            Thread thread = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        long started = System.nanoTime();
+                        if (request(base, random, writePercent)) {
+                            latency.record(System.nanoTime() - started);
+                        } else {
+                            errors.increment();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + client);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+    }
+
+    /// one request of the mix, true if it got a 2xx answer.
+    private static boolean request(String base, SplittableRandom random, int writePercent) {
+        try {
+            int pick = random.nextInt(100);
+            HttpURLConnection connection;
+            if (pick < writePercent) {
+                connection = (HttpURLConnection) new URL(base + "/payment").openConnection();
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                byte[] form = ("description=Load+test&vendor=" + VENDORS[random.nextInt(VENDORS.length)].replace(' ', '+')
+                        + "&amount=" + (1 + random.nextInt(500)) + ".00").getBytes(StandardCharsets.UTF_8);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(form);
+                }
+            } else {
+                String path = switch (pick % 5) {
+                    case 0 -> "/ledger?limit=50";
+                    case 1 -> "/ledger?type=payments&limit=20&offset=" + random.nextInt(200);
+                    case 2 -> "/vendor?name=" + VENDORS[random.nextInt(VENDORS.length)].replace(" ", "%20");
+                    case 3 -> {
+                        LocalDate from = FIRST_DAY.plusDays(random.nextInt(1800));
+                        yield "/search?description=coffee&amount=..-10&from=" + from + "&to=" + from.plusDays(30);
+                    }
+                    default -> "/report/previous-month";
+                };
+                connection = (HttpURLConnection) new URL(base + path).openConnection();
+            }
+            int status = connection.getResponseCode();
+            /// read the body to the end so the connection goes back to the keep-alive cache.
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+            return status / 100 == 2;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1e6);
+    }
+}
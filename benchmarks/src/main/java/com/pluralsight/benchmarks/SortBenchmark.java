@@ -0,0 +1,96 @@
+package com.pluralsight.benchmarks;
+
+import com.pluralsight.CsvLoader;
+import com.pluralsight.DateIndex;
+import com.pluralsight.LedgerRenderer;
+import com.pluralsight.LedgerStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the ledger in date order: opening the newest first view as ledgerMenu does, building the
+ * date index after a load, inserting a backdated entry, and a full re-sort as the baseline it replaced.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SortBenchmark {
+
+    /**
+     * A ledger of its own per iteration, since the backdated inserts grow it.
+     */
+    @State(Scope.Benchmark)
+    public static class GrowingLedger {
+        @Param({"10000", "1000000"})
+        public int rows;
+
+        LedgerStore store;
+        DateIndex dateIndex;
+        int firstDay;
+        int days;
+        final SplittableRandom random = new SplittableRandom(7);
+
+        @Setup(Level.Iteration)
+        public void load() throws IOException {
+            store = new LedgerStore();
+            CsvLoader.load(Ledgers.ensure(rows), store);
+            dateIndex = new DateIndex(store);
+            dateIndex.sync();
+            firstDay = store.getEpochDay(0);
+            days = store.getEpochDay(store.size() - 1) - firstDay + 1;
+        }
+    }
+
+    /// first page of the ledger screen, newest first.
+    @Benchmark
+    public int openLedger(LedgerState state) {
+        LedgerRenderer.RowSource rows = state.dateIndex.newestFirst();
+        int sum = 0;
+        for (int position = 0; position < Math.min(50, rows.size()); position++) {
+            sum += rows.rowAt(position);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public DateIndex buildDateIndex(LedgerState state) {
+        DateIndex index = new DateIndex(state.store);
+        index.sync();
+        return index;
+    }
+
+    @Benchmark
+    public int insertBackdated(GrowingLedger ledger) {
+        int row = ledger.store.add(ledger.firstDay + ledger.random.nextInt(ledger.days), ledger.random.nextInt(86_400),
+                "Backdated entry", "Vendor 1", -1_000);
+        ledger.dateIndex.sync();
+        return row;
+    }
+
+    /// what ledgerMenu used to do on every visit.
+    @Benchmark
+    public int[] fullSortBaseline(LedgerState state) {
+        int[] rows = new int[state.store.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        state.store.sortNewestFirst(rows);
+        return rows;
+    }
+}
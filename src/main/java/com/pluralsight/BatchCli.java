@@ -0,0 +1,716 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntPredicate;
+
+/**
+ * Non-interactive commands for scripts and cron jobs, run when FinancialTracker gets arguments.
+ * Rows go to standard output as transactions.csv lines or as one JSON document, messages go to
+ * standard error. Exit status is 0 on success, 1 on failure or rejected input lines and 2 on bad usage.
+ * <p>
+ * Imported rows are parsed in parallel into a staging store and written to the transactions file as
+ * a few large group commits instead of one append per transaction.
+ * <p>
+ * "migrate" splits the transactions file into month segments (see PartitionManifest). After that, report
+ * and date bounded searches read only the months they cover.
+ * <p>
+ * "edit" and "delete" take the id of a transaction, the "id" of its JSON row, and append to the edit log;
+ * "compact" rewrites the transactions file without the edited and deleted rows.
+ * <p>
+ * "serve" keeps the ledger loaded and answers the same commands over HTTP (see LedgerServer) until the process
+ * is stopped.
+ */
+public class BatchCli {
+
+    static final int OK = 0;
+    static final int FAILED = 1;
+    static final int USAGE = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String USAGE_TEXT = String.join(System.lineSeparator(),
+            "Usage: FinancialTracker <command> [arguments] [--file transactions.csv] [--format csv|json]",
+            "Commands:",
+            "  add [FILE|-]                         append transactions in the transactions.csv format, - reads stdin",
+            "  import FILE|-                        like add, but skips rows already in the ledger",
+            "  report mtd|previous-month|ytd|previous-year",
+            "  vendor NAME                          transactions of one vendor",
+            "  search [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--description TEXT] [--vendor NAME] [--amount N|MIN..MAX]",
+            "  edit ID [--date yyyy-MM-dd] [--time HH:mm:ss] [--description TEXT] [--vendor NAME] [--amount N]",
+            "                                       change the given fields of one transaction",
+            "  delete ID                            delete one transaction",
+            "  compact                              rewrite the transactions file without edited and deleted rows",
+            "  migrate                              split the transactions file into one file per month",
+            "  export FILE [--type all|deposits|payments] [--report NAME] [search options]",
+            "                                       stream rows to FILE, .csv or .jsonl, gzipped when it ends in .gz",
+            "  serve [--port 8080]                  answer HTTP requests on localhost until stopped, see LedgerServer",
+            "  help                                 show this text",
+            "Rows are printed newest first. Without arguments the interactive menu starts.");
+
+    private BatchCli() {
+    }
+
+    /**
+     * Run one command.
+     *
+     * @param args command line, the command first.
+     * @param in   input for "add -".
+     * @param out  rows and results.
+     * @param err  messages.
+     * @return exit status.
+     */
+    public static int run(String[] args, InputStream in, PrintStream out, PrintStream err) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                if (i + 1 == args.length) {
+                    err.println("Missing value for " + args[i]);
+                    return USAGE;
+                }
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        String command = positional.isEmpty() ? "help" : positional.get(0).toLowerCase();
+        String format = options.getOrDefault("format", "csv").toLowerCase();
+        if (!format.equals("csv") && !format.equals("json")) {
+            err.println("Unknown format " + format + ", use csv or json.");
+            return USAGE;
+        }
+        if (command.equals("help")) {
+            out.println(USAGE_TEXT);
+            return OK;
+        }
+
+        /// closed on every path, so the journal is flushed and its channels released when a command fails too.
+        try (Ledger book = new Ledger(Path.of(options.getOrDefault("file", "transactions.csv")))) {
+            if (command.equals("migrate")) {
+                Output output = new Output(book, out, format.equals("json"));
+                int status = migrate(book, output, err);
+                output.flush();
+                return status;
+            }
+            if (!book.isPartitioned() && Files.notExists(book.getCsv())) {
+                Files.createFile(book.getCsv());
+            }
+            /// a partitioned ledger only reads the months a report or a date bounded search covers.
+            LocalDate[] range = range(command, positional, options);
+            Ledger.LoadReport report = range == null ? book.load() : book.load(range[0], range[1]);
+            if (report.getSnapshotProblem() != null) {
+                err.println("Snapshot not used, reading the whole file. " + report.getSnapshotProblem());
+            }
+            String source = book.isPartitioned() ? "" : book.getCsv().getFileName() + " ";
+            for (String error : report.getCsvResult().getErrors()) {
+                err.println("Skipped " + source + error);
+            }
+            for (String error : report.getEditErrors()) {
+                err.println("Skipped " + error);
+            }
+
+            Output output = new Output(book, out, format.equals("json"));
+            int status = switch (command) {
+                case "add" -> add(book, positional.size() > 1 ? positional.get(1) : "-", in, output, err);
+                case "import" -> importStatement(book, positional.size() > 1 ? positional.get(1) : "-", in, output, err);
+                case "report" -> report(book, positional.size() > 1 ? positional.get(1) : "", output, err);
+                case "vendor" -> vendor(book, String.join(" ", positional.subList(1, positional.size())), output, err);
+                case "search" -> search(book, options, output, err);
+                case "edit" -> edit(book, positional.size() > 1 ? positional.get(1) : "", options, output, err);
+                case "delete" -> delete(book, positional.size() > 1 ? positional.get(1) : "", output, err);
+                case "compact" -> compact(book, output, err);
+                case "serve" -> serve(book, options, err);
+                case "export" -> export(book, positional.size() > 1 ? positional.get(1) : "", options, output, err);
+                default -> {
+                    err.println("Unknown command " + command);
+                    err.println(USAGE_TEXT);
+                    yield USAGE;
+                }
+            };
+            output.flush();
+            return status;
+        } catch (IOException | IllegalStateException e) {
+            err.println("Error: " + e);
+            return FAILED;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Commands
+       ------------------------------------------------------------------ */
+
+    private static int add(Ledger book, String source, InputStream in, Output output, PrintStream err) throws IOException {
+        LedgerStore staged = new LedgerStore();
+        Path file = inputFile(source, in);
+        CsvLoader.Result result;
+        try {
+            result = CsvLoader.load(file, staged);
+        } finally {
+            deleteSpooled(source, file);
+        }
+        for (String error : result.getErrors()) {
+            err.println("Rejected " + error);
+        }
+
+        openJournal(book);
+        int[] rows = new int[staged.size()];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        int added = book.addAll(staged, rows);
+
+        err.println("Added " + added + " transactions, rejected " + result.getErrors().size() + " lines.");
+        if (output.json) {
+            output.begin().field("added", added).field("rejected", result.getErrors().size())
+                    .name("errors").beginArray();
+            for (String error : result.getErrors()) {
+                output.element().string(error);
+            }
+            output.endArray().end();
+        }
+        return result.getErrors().isEmpty() ? OK : FAILED;
+    }
+
+    private static int importStatement(Ledger book, String source, InputStream in, Output output, PrintStream err) throws IOException {
+        openJournal(book);
+        Path file = inputFile(source, in);
+        StatementImporter.Result result;
+        try {
+            result = StatementImporter.importFile(book, file);
+        } finally {
+            deleteSpooled(source, file);
+        }
+        for (String error : result.getErrors()) {
+            err.println("Rejected " + error);
+        }
+
+        err.println("Imported " + result.getImported() + " transactions, skipped " + result.getDuplicates()
+                + " duplicates, rejected " + result.getRejected() + " lines.");
+        if (output.json) {
+            output.begin().field("imported", result.getImported()).field("duplicates", result.getDuplicates())
+                    .field("rejected", result.getRejected()).name("errors").beginArray();
+            for (String error : result.getErrors()) {
+                output.element().string(error);
+            }
+            output.endArray().end();
+        }
+        return result.getRejected() == 0 ? OK : FAILED;
+    }
+
+    static int report(Ledger book, String name, Output output, PrintStream err) throws IOException {
+        ReportPeriod period = ReportPeriod.fromCommand(name);
+        if (period == null) {
+            err.println("Unknown report '" + name + "', use mtd, previous-month, ytd or previous-year.");
+            return USAGE;
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate start = period.start(today);
+        LocalDate end = period.end(today);
+
+        ReportCache.Report report = book.report(period.getLabel(), start, end);
+        LedgerRenderer.RowSource rows = report.getRows();
+        LedgerAggregates.Totals totals = report.getTotals();
+        long balance = report.getBalanceCents();
+
+        if (output.json) {
+            output.begin().field("report", period.getCommand())
+                    .field("start", start.toString()).field("end", end.toString())
+                    .totals(totals).cents("balance", balance);
+            output.rows(rows).end();
+        } else {
+            output.rows(rows);
+            err.println(period.getLabel() + " " + start + " to " + end + ": " + summary(totals)
+                    + ", balance " + MoneyCodec.format(balance));
+        }
+        return OK;
+    }
+
+    static int vendor(Ledger book, String vendor, Output output, PrintStream err) throws IOException {
+        if (vendor.isBlank()) {
+            err.println("Missing vendor name.");
+            return USAGE;
+        }
+        int[] rows = book.getVendorIndex().find(vendor);
+        book.getStore().sortNewestFirst(rows);
+        LedgerAggregates.Totals totals = book.getAggregates().vendor(vendor);
+
+        if (output.json) {
+            output.begin().field("vendor", vendor).totals(totals);
+            output.rows(LedgerRenderer.RowSource.of(rows)).end();
+        } else {
+            output.rows(LedgerRenderer.RowSource.of(rows));
+            err.println("Vendor " + vendor + ": " + summary(totals));
+        }
+        return OK;
+    }
+
+    static int search(Ledger book, Map<String, String> options, Output output, PrintStream err) throws IOException {
+        TransactionQuery query = query(options, err);
+        if (query == null) {
+            return USAGE;
+        }
+
+        QueryEngine.Result result = book.getQueryEngine().execute(query);
+        if (output.json) {
+            output.begin().field("accessPath", result.getAccessPath().name())
+                    .field("scanned", result.getScanned()).field("matched", result.getMatched());
+            output.rows(LedgerRenderer.RowSource.of(result.getRows())).end();
+        } else {
+            output.rows(LedgerRenderer.RowSource.of(result.getRows()));
+            err.println("Matched " + result.getMatched() + " of " + result.getScanned()
+                    + " rows scanned using " + result.getAccessPath() + ".");
+        }
+        return OK;
+    }
+
+    private static int edit(Ledger book, String id, Map<String, String> options, Output output, PrintStream err) throws IOException {
+        int row = findRow(book, id, err);
+        if (row < 0) {
+            return row == -1 ? FAILED : USAGE;
+        }
+        LedgerStore store = book.getStore();
+        LocalDate date = LocalDate.ofEpochDay(store.getEpochDay(row));
+        LocalTime time = LocalTime.ofSecondOfDay(store.getSecondOfDay(row));
+        long cents = store.getCents(row);
+        try {
+            date = options.containsKey("date") ? LocalDate.parse(options.get("date")) : date;
+            time = options.containsKey("time") ? LocalTime.parse(options.get("time")) : time;
+        } catch (DateTimeParseException e) {
+            err.println("Invalid date or time, use the formats yyyy-MM-dd and HH:mm:ss. " + e.getMessage());
+            return USAGE;
+        }
+        try {
+            cents = options.containsKey("amount") ? MoneyCodec.parseCents(options.get("amount")) : cents;
+        } catch (NumberFormatException e) {
+            err.println("Invalid amount '" + options.get("amount") + "', use a number, negative for a payment.");
+            return USAGE;
+        }
+
+        String description = options.getOrDefault("description", store.getDescription(row));
+        String vendor = options.getOrDefault("vendor", store.getVendor(row));
+        if (!Ledger.fitsLine(description) || !Ledger.fitsLine(vendor)) {
+            err.println("Description and vendor can not contain '|' or line breaks.");
+            return USAGE;
+        }
+
+        openJournal(book);
+        int updated = book.update(Integer.parseInt(id), date, time, description, vendor, cents);
+        err.println("Updated transaction " + id + ".");
+        if (output.json) {
+            output.begin().field("updated", Integer.parseInt(id));
+            output.rows(LedgerRenderer.RowSource.of(new int[]{updated})).end();
+        } else {
+            output.rows(LedgerRenderer.RowSource.of(new int[]{updated}));
+        }
+        return OK;
+    }
+
+    private static int delete(Ledger book, String id, Output output, PrintStream err) throws IOException {
+        if (findRow(book, id, err) < 0) {
+            return FAILED;
+        }
+        openJournal(book);
+        book.delete(Integer.parseInt(id));
+        err.println("Deleted transaction " + id + ".");
+        if (output.json) {
+            output.begin().field("deleted", Integer.parseInt(id)).end();
+        }
+        return OK;
+    }
+
+    private static int compact(Ledger book, Output output, PrintStream err) throws IOException {
+        int records = book.getDeadRecords();
+        openJournal(book);
+        book.compact();
+        err.println("Compacted " + book.getCsv() + ", applied " + records + " edits.");
+        if (output.json) {
+            output.begin().field("applied", records).end();
+        }
+        return OK;
+    }
+
+    /// runs until the process is stopped, the shutdown hook closes the server and then the ledger, the JVM may
+    /// halt before run gets to close it.
+    private static int serve(Ledger book, Map<String, String> options, PrintStream err) throws IOException {
+        int port;
+        try {
+            port = Integer.parseInt(options.getOrDefault("port", "8080"));
+        } catch (NumberFormatException e) {
+            err.println("Invalid port '" + options.get("port") + "'.");
+            return USAGE;
+        }
+        openJournal(book);
+        LedgerServer server = new LedgerServer(book, port);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                book.close();
+            } catch (IOException e) {
+                err.println("Error saving transactions to file. " + e);
+            }
+            stopped.countDown();
+        }, "ledger-server-shutdown"));
+        err.println("Serving " + book.getCsv() + " on http://127.0.0.1:" + server.getPort() + "/ using "
+                + (server.isVirtualThreads() ? "virtual threads" : "a thread pool") + ", stop with Ctrl+C.");
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return OK;
+    }
+
+    /// current row of the id argument, -1 if there is no such transaction and -2 if it is not a number.
+    private static int findRow(Ledger book, String id, PrintStream err) {
+        int row;
+        try {
+            row = book.findRow(Integer.parseInt(id));
+        } catch (NumberFormatException e) {
+            err.println("Invalid id '" + id + "', use the id of a transaction.");
+            return -2;
+        }
+        if (row < 0) {
+            err.println("No transaction with id " + id + ".");
+        }
+        return row;
+    }
+
+    /// the search options as a query, null after printing the problem when one is invalid.
+    private static TransactionQuery query(Map<String, String> options, PrintStream err) {
+        TransactionQuery query = new TransactionQuery();
+        try {
+            query.setStartDate(options.containsKey("from") ? LocalDate.parse(options.get("from")) : null);
+            query.setEndDate(options.containsKey("to") ? LocalDate.parse(options.get("to")) : null);
+        } catch (DateTimeParseException e) {
+            err.println("Invalid date, use the format yyyy-MM-dd. " + e.getMessage());
+            return null;
+        }
+        query.setDescription(options.get("description"));
+        query.setVendor(options.get("vendor"));
+        if (options.containsKey("amount") && !query.setAmount(options.get("amount"))) {
+            err.println("Invalid amount '" + options.get("amount") + "', use a number or a range like 10..50.");
+            return null;
+        }
+        return query;
+    }
+
+    /// a date range is streamed from the date index, other search options go through the query engine first.
+    private static int export(Ledger book, String target, Map<String, String> options, Output output, PrintStream err) throws IOException {
+        if (target.isEmpty()) {
+            err.println("Missing file to export to, e.g. ledger.csv, ledger.jsonl or ledger.jsonl.gz.");
+            return USAGE;
+        }
+        String type = options.getOrDefault("type", "all").toLowerCase();
+        if (!type.equals("all") && !type.equals("deposits") && !type.equals("payments")) {
+            err.println("Unknown type '" + type + "', use all, deposits or payments.");
+            return USAGE;
+        }
+        LedgerStore store = book.getStore();
+        IntPredicate filter = type.equals("all") ? null
+                : type.equals("deposits") ? row -> store.getCents(row) > 0 : row -> store.getCents(row) < 0;
+
+        LedgerRenderer.RowSource rows;
+        if (options.containsKey("report")) {
+            ReportPeriod period = ReportPeriod.fromCommand(options.get("report"));
+            if (period == null) {
+                err.println("Unknown report '" + options.get("report") + "', use mtd, previous-month, ytd or previous-year.");
+                return USAGE;
+            }
+            LocalDate today = LocalDate.now();
+            rows = dateRange(book, period.start(today), period.end(today));
+        } else if (options.containsKey("description") || options.containsKey("vendor") || options.containsKey("amount")) {
+            TransactionQuery query = query(options, err);
+            if (query == null) {
+                return USAGE;
+            }
+            rows = LedgerRenderer.RowSource.of(book.getQueryEngine().execute(query).getRows());
+        } else {
+            TransactionQuery query = query(options, err);
+            if (query == null) {
+                return USAGE;
+            }
+            rows = dateRange(book, query.getStartDate(), query.getEndDate());
+        }
+
+        Path file = Path.of(target);
+        long exported = LedgerExporter.export(store, rows, filter, book.getIds(), file);
+        err.println("Exported " + exported + " transactions to " + file + " as "
+                + (LedgerExporter.formatOf(file) == LedgerExporter.Format.CSV ? "CSV" : "JSON Lines")
+                + (LedgerExporter.isGzip(file) ? ", gzipped." : "."));
+        if (output.json) {
+            output.begin().field("exported", exported).field("file", file.toString()).end();
+        }
+        return OK;
+    }
+
+    /// rows of [start, end] newest first straight from the date index, either end open when null.
+    private static LedgerRenderer.RowSource dateRange(Ledger book, LocalDate start, LocalDate end) {
+        DateIndex.View view = book.getDateIndex().view();
+        int from = start == null ? 0 : view.lowerBound((int) start.toEpochDay());
+        int to = end == null ? view.size() : view.upperBound((int) end.toEpochDay());
+        return view.newestFirst(from, Math.max(from, to));
+    }
+
+    private static int migrate(Ledger book, Output output, PrintStream err) throws IOException {
+        if (book.isPartitioned()) {
+            err.println(book.getPartitionDir() + " is already partitioned.");
+            return FAILED;
+        }
+        if (Files.notExists(book.getCsv())) {
+            err.println("No transactions file " + book.getCsv());
+            return FAILED;
+        }
+        CsvLoader.Result result = book.migrate();
+        for (String error : result.getErrors()) {
+            err.println("Rejected " + error);
+        }
+        long months = PartitionManifest.read(book.getPartitionDir()).segments().size();
+
+        err.println("Migrated " + result.getRowCount() + " transactions into " + months + " months in "
+                + book.getPartitionDir() + ", rejected " + result.getErrors().size() + " lines.");
+        if (output.json) {
+            output.begin().field("migrated", result.getRowCount()).field("months", months)
+                    .field("rejected", result.getErrors().size()).name("errors").beginArray();
+            for (String error : result.getErrors()) {
+                output.element().string(error);
+            }
+            output.endArray().end();
+        }
+        return result.getErrors().isEmpty() ? OK : FAILED;
+    }
+
+    /// dates a report or search needs, null when the command needs the whole ledger or its arguments are invalid.
+    private static LocalDate[] range(String command, List<String> positional, Map<String, String> options) {
+        if (command.equals("report") || (command.equals("export") && options.containsKey("report"))) {
+            ReportPeriod period = ReportPeriod.fromCommand(command.equals("export") ? options.get("report")
+                    : positional.size() > 1 ? positional.get(1) : "");
+            if (period == null) {
+                return null;
+            }
+            LocalDate today = LocalDate.now();
+            return new LocalDate[]{period.start(today), period.end(today)};
+        }
+        if ((command.equals("search") || command.equals("export")) && !options.containsKey("report")
+                && (options.containsKey("from") || options.containsKey("to"))) {
+            try {
+                return new LocalDate[]{options.containsKey("from") ? LocalDate.parse(options.get("from")) : null,
+                        options.containsKey("to") ? LocalDate.parse(options.get("to")) : null};
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /// the loader reads files in parallel chunks, so standard input is spooled to a temp file first.
+    private static Path inputFile(String source, InputStream in) throws IOException {
+        if (!source.equals("-")) {
+            return Path.of(source);
+        }
+        Path temp = Files.createTempFile("tracker-import", ".csv");
+        Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+        return temp;
+    }
+
+    private static void deleteSpooled(String source, Path file) throws IOException {
+        if (source.equals("-")) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /// same -Dtracker.journal.sync and -Dtracker.journal.windowMillis settings as the menu.
+    private static void openJournal(Ledger book) throws IOException {
+        JournalWriter.SyncPolicy policy = JournalWriter.SyncPolicy.parse(System.getProperty("tracker.journal.sync"));
+        book.openJournal(policy, Long.getLong("tracker.journal.windowMillis", 50L));
+    }
+
+    private static String summary(LedgerAggregates.Totals totals) {
+        return totals.getCount() + " transactions, deposits " + MoneyCodec.format(totals.getDepositCents())
+                + ", payments " + MoneyCodec.format(totals.getPaymentCents())
+                + ", net " + MoneyCodec.format(totals.getNetCents());
+    }
+
+    /* ------------------------------------------------------------------
+       Output
+       ------------------------------------------------------------------ */
+
+    /**
+     * Buffered writer for rows as CSV lines or a small hand rolled JSON object, one reused line buffer.
+     * JSON members are written in call order, commas are tracked per nesting level. LedgerServer writes its
+     * responses with it too.
+     */
+    static class Output {
+        private final Ledger book;
+        private final LedgerStore store;
+        private final Writer out;
+        final boolean json;
+        private final StringBuilder line = new StringBuilder(128);
+        /// one entry per open object or array, true once it has a member.
+        private final List<Boolean> hasMember = new ArrayList<>();
+
+        Output(Ledger book, OutputStream out, boolean json) {
+            this.book = book;
+            this.store = book.getStore();
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            this.json = json;
+        }
+
+        /// rows as CSV lines, or as the "rows" member of the open JSON object.
+        Output rows(LedgerRenderer.RowSource rows) throws IOException {
+            if (json) {
+                name("rows").beginArray();
+            }
+            for (int position = 0; position < rows.size(); position++) {
+                int row = rows.rowAt(position);
+                if (json) {
+                    element();
+                    line.setLength(0);
+                    line.append('{');
+                    if (!book.isPartitioned()) {
+                        line.append("\"id\":").append(book.getId(row)).append(',');
+                    }
+                    line.append("\"date\":\"");
+                    LedgerRenderer.appendDate(line, store.getEpochDay(row));
+                    line.append("\",\"time\":\"");
+                    LedgerRenderer.appendTime(line, store.getSecondOfDay(row));
+                    line.append("\",\"description\":");
+                    appendString(line, store.getDescription(row));
+                    line.append(",\"vendor\":");
+                    appendString(line, store.getVendor(row));
+                    line.append(",\"amount\":");
+                    MoneyCodec.appendCents(line, store.getCents(row));
+                    line.append('}');
+                } else {
+                    line.setLength(0);
+                    store.appendCsvLine(line, row);
+                    line.append('\n');
+                }
+                out.append(line);
+            }
+            if (json) {
+                endArray();
+            }
+            return this;
+        }
+
+        Output begin() throws IOException {
+            out.write('{');
+            hasMember.add(false);
+            return this;
+        }
+
+        Output end() throws IOException {
+            out.write("}\n");
+            hasMember.remove(hasMember.size() - 1);
+            return this;
+        }
+
+        Output beginArray() throws IOException {
+            out.write('[');
+            hasMember.add(false);
+            return this;
+        }
+
+        Output endArray() throws IOException {
+            out.write(']');
+            hasMember.remove(hasMember.size() - 1);
+            return this;
+        }
+
+        /// separator before the next member of the innermost object or array.
+        Output element() throws IOException {
+            int last = hasMember.size() - 1;
+            if (hasMember.get(last)) {
+                out.write(',');
+            }
+            hasMember.set(last, true);
+            return this;
+        }
+
+        Output name(String name) throws IOException {
+            element();
+            string(name);
+            out.write(':');
+            return this;
+        }
+
+        Output string(String value) throws IOException {
+            line.setLength(0);
+            appendString(line, value);
+            out.append(line);
+            return this;
+        }
+
+        Output field(String name, String value) throws IOException {
+            return name(name).string(value);
+        }
+
+        Output field(String name, long value) throws IOException {
+            name(name);
+            out.write(Long.toString(value));
+            return this;
+        }
+
+        Output cents(String name, long cents) throws IOException {
+            name(name);
+            out.write(MoneyCodec.format(cents));
+            return this;
+        }
+
+        Output totals(LedgerAggregates.Totals totals) throws IOException {
+            name("totals").begin();
+            field("count", totals.getCount());
+            cents("deposits", totals.getDepositCents());
+            cents("payments", totals.getPaymentCents());
+            cents("net", totals.getNetCents());
+            out.write('}');
+            hasMember.remove(hasMember.size() - 1);
+            return this;
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        static void appendString(StringBuilder sb, String value) {
+            sb.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                    }
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
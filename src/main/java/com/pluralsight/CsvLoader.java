@@ -0,0 +1,388 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Fast loader for the pipe separated transactions file.
+ * The file is cut into newline aligned chunks that are parsed in parallel straight from the raw bytes,
+ * without regex splitting or DateTimeFormatter parsing.
+ * Rows go straight into a LedgerStore in file order.
+ * A malformed line is reported with its line number and skipped, the rest of the file still loads.
+ */
+public class CsvLoader {
+
+    /// target size of one parse chunk, every chunk ends right after a line break.
+    static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int SCAN_WINDOW = 4096;
+
+    private CsvLoader() {
+    }
+
+    /**
+     * Outcome of a load: number of rows added plus one message per rejected line.
+     */
+    public static class Result {
+        private final int rowCount;
+        private final List<String> errors;
+        private final long lineCount;
+        private final long byteCount;
+
+        Result(int rowCount, List<String> errors, long lineCount, long byteCount) {
+            this.rowCount = rowCount;
+            this.errors = errors;
+            this.lineCount = lineCount;
+            this.byteCount = byteCount;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public long getLineCount() {
+            return lineCount;
+        }
+
+        public long getByteCount() {
+            return byteCount;
+        }
+    }
+
+    /**
+     * Load every line of the file and append the rows to the store.
+     *
+     * @param path  transactions file, must exist.
+     * @param store store receiving the rows.
+     * @return row count and line errors.
+     * @throws IOException if the file can not be read.
+     */
+    public static Result load(Path path, LedgerStore store) throws IOException {
+        return load(path, store, 0, 0);
+    }
+
+    /**
+     * Load the lines from a byte offset to the end of the file, e.g. lines appended after a snapshot was taken.
+     *
+     * @param path         transactions file, must exist.
+     * @param store        store receiving the rows.
+     * @param fromOffset   byte offset of the first line to read, must be the start of a line.
+     * @param linesSkipped number of lines before the offset, so errors still report file line numbers.
+     * @return row count and line errors, the line and byte counts only cover the part that was read.
+     * @throws IOException if the file can not be read.
+     */
+    public static Result load(Path path, LedgerStore store, long fromOffset, long linesSkipped) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return load(channel, store, fromOffset, channel.size(), linesSkipped);
+        }
+    }
+
+    /**
+     * Load the lines in [fromOffset, toOffset) of an open file, e.g. the complete lines appended since the last read.
+     */
+    static Result load(FileChannel channel, LedgerStore store, long fromOffset, long toOffset, long linesSkipped) throws IOException {
+        long size = Math.min(toOffset, channel.size());
+        long[] bounds = chunkBounds(channel, Math.min(fromOffset, size), size);
+
+        Chunk[] chunks;
+        try {
+            chunks = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> readChunk(channel, bounds[i], bounds[i + 1]))
+                    .toArray(Chunk[]::new);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        /// stitch chunk results back together in file order, turning chunk line numbers into file line numbers.
+        int rowCount = 0;
+        List<String> errors = new ArrayList<>();
+        long lineBase = linesSkipped;
+        for (Chunk chunk : chunks) {
+            chunk.appendTo(store);
+            rowCount += chunk.rows;
+            for (int i = 0; i < chunk.errorLines.size(); i++) {
+                errors.add("line " + (lineBase + chunk.errorLines.get(i)) + ": " + chunk.errorReasons.get(i));
+            }
+            lineBase += chunk.lineCount;
+        }
+        return new Result(rowCount, errors, lineBase - linesSkipped, size - bounds[0]);
+    }
+
+    /**
+     * Position just after the last line break in [from, to), or from if there is none, so that [from, result)
+     * holds only complete lines while a writer may still be in the middle of the last one.
+     */
+    static long completeLinesEnd(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long end = to;
+        while (end > from) {
+            long start = Math.max(from, end - SCAN_WINDOW);
+            window.clear().limit((int) (end - start));
+            while (window.hasRemaining()) {
+                if (channel.read(window, start + window.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = window.position() - 1; i >= 0; i--) {
+                if (window.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return from;
+    }
+
+    /* ------------------------------------------------------------------
+       Chunking
+       ------------------------------------------------------------------ */
+
+    /**
+     * Split the file into ranges of roughly CHUNK_SIZE bytes, moving each cut forward to just after a line break.
+     */
+    private static long[] chunkBounds(FileChannel channel, long from, long size) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(from);
+        long cut = from + CHUNK_SIZE;
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+
+        while (cut < size) {
+            long lineEnd = -1;
+            long pos = cut;
+            while (lineEnd < 0 && pos < size) {
+                window.clear();
+                int read = channel.read(window, pos);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        lineEnd = pos + i + 1;
+                        break;
+                    }
+                }
+                pos += read;
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            bounds.add(lineEnd);
+            cut = lineEnd + CHUNK_SIZE;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static Chunk readChunk(FileChannel channel, long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Chunk chunk = new Chunk();
+        int from = start == 0 ? skipBom(bytes) : 0;
+        chunk.parse(bytes, from, buffer.position());
+        return chunk;
+    }
+
+    private static int skipBom(byte[] bytes) {
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+
+    /**
+     * Parse state of one chunk, line numbers are local to the chunk and start at 1.
+     */
+    private static class Chunk {
+        private final List<Integer> errorLines = new ArrayList<>();
+        private final List<String> errorReasons = new ArrayList<>();
+        private int lineCount;
+
+        private int rows;
+        private int[] epochDays = new int[256];
+        private int[] secondsOfDay = new int[256];
+        private long[] cents = new long[256];
+        private String[] descriptions = new String[256];
+        private String[] vendors = new String[256];
+
+        void parse(byte[] buf, int from, int to) {
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = lineStart;
+                while (lineEnd < to && buf[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                lineCount++;
+                int contentEnd = lineEnd;
+                if (contentEnd > lineStart && buf[contentEnd - 1] == '\r') {
+                    contentEnd--;
+                }
+                /// blank lines are ignored, e.g. a trailing empty line at the end of the file.
+                if (contentEnd > lineStart) {
+                    try {
+                        parseLine(buf, lineStart, contentEnd);
+                    } catch (IllegalArgumentException e) {
+                        errorLines.add(lineCount);
+                        errorReasons.add(e.getMessage());
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        /**
+         * Decode one line "yyyy-MM-dd|HH:mm:ss|description|vendor|amount" into the next chunk row.
+         *
+         * @throws IllegalArgumentException describing the first bad field.
+         */
+        private void parseLine(byte[] buf, int start, int end) {
+            int[] cuts = new int[4];
+            int found = 0;
+            for (int i = start; i < end && found < 4; i++) {
+                if (buf[i] == '|') {
+                    cuts[found++] = i;
+                }
+            }
+            if (found < 4) {
+                throw new IllegalArgumentException("expected 5 fields separated by '|' but found " + (found + 1));
+            }
+
+            int epochDay = parseEpochDay(buf, start, cuts[0]);
+            int secondOfDay = parseSecondOfDay(buf, cuts[0] + 1, cuts[1]);
+            long amountCents = parseAmount(buf, cuts[3] + 1, end);
+
+            if (rows == epochDays.length) {
+                int capacity = rows * 2;
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                secondsOfDay = Arrays.copyOf(secondsOfDay, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+                vendors = Arrays.copyOf(vendors, capacity);
+            }
+            epochDays[rows] = epochDay;
+            secondsOfDay[rows] = secondOfDay;
+            cents[rows] = amountCents;
+            descriptions[rows] = new String(buf, cuts[1] + 1, cuts[2] - cuts[1] - 1, StandardCharsets.UTF_8);
+            vendors[rows] = new String(buf, cuts[2] + 1, cuts[3] - cuts[2] - 1, StandardCharsets.UTF_8);
+            rows++;
+        }
+
+        void appendTo(LedgerStore store) {
+            for (int i = 0; i < rows; i++) {
+                store.add(epochDays[i], secondsOfDay[i], descriptions[i], vendors[i], cents[i]);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Field decoding
+       ------------------------------------------------------------------ */
+
+    /**
+     * Decode a fixed width "yyyy-MM-dd" field into days since 1970-01-01.
+     */
+    static int parseEpochDay(byte[] buf, int start, int end) {
+        if (end - start != 10 || buf[start + 4] != '-' || buf[start + 7] != '-') {
+            throw badField("date", buf, start, end);
+        }
+        int year = digits(buf, start, 4);
+        int month = digits(buf, start + 5, 2);
+        int day = digits(buf, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw badField("date", buf, start, end);
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Decode a fixed width "HH:mm:ss" field into seconds since midnight.
+     */
+    static int parseSecondOfDay(byte[] buf, int start, int end) {
+        if (end - start != 8 || buf[start + 2] != ':' || buf[start + 5] != ':') {
+            throw badField("time", buf, start, end);
+        }
+        int hour = digits(buf, start, 2);
+        int minute = digits(buf, start + 3, 2);
+        int second = digits(buf, start + 6, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            throw badField("time", buf, start, end);
+        }
+        return hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Decode the amount field into cents without going through a String or a double.
+     */
+    static long parseAmount(byte[] buf, int start, int end) {
+        try {
+            return MoneyCodec.parseCents(buf, start, end);
+        } catch (NumberFormatException e) {
+            throw badField("amount", buf, start, end);
+        }
+    }
+
+    /// read count ASCII digits as a number, -1 if any byte is not a digit.
+    private static int digits(byte[] buf, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * Days since 1970-01-01 for a valid proleptic Gregorian date, same result as LocalDate.toEpochDay().
+     */
+    static int epochDay(int year, int month, int day) {
+        /// shift the year to start in March so the leap day is the last day of the year.
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static IllegalArgumentException badField(String field, byte[] buf, int start, int end) {
+        String text = new String(buf, start, Math.min(end - start, 40), StandardCharsets.UTF_8);
+        return new IllegalArgumentException("invalid " + field + " '" + text + "'");
+    }
+}
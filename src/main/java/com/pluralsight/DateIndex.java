@@ -0,0 +1,360 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/**
+ * Row numbers of a LedgerStore or MappedLedger kept sorted oldest to newest by date then time.
+ * Range lookups binary search the sorted keys, so a period report only visits the rows inside the period.
+ * Rows appended to the store after the last lookup are merged in lazily, a pure append when they are
+ * newer than everything already indexed.
+ * <p>
+ * Lookups go through a View, an unchanging picture of the index: appends only write past the end of
+ * the views already handed out, so a long scan over a view is never disturbed by writers. Only catching
+ * up with the store takes a lock.
+ * <p>
+ * Backdated rows are not merged into the sorted arrays one by one, which would copy the whole index per row.
+ * They are kept beside them in a small sorted array with the position of each row in the view: a backdated
+ * row is placed by binary search and one copy of that small array. Once it holds more than about the square
+ * root of the index, it is merged into new sorted arrays in one pass.
+ * <p>
+ * Deleted rows are left out. A delete copies the index once, into a view without it.
+ */
+public class DateIndex {
+
+    private static final long SECONDS_PER_DAY = 86_400L;
+    /// backdated rows kept beside a small index before they are merged in.
+    private static final int MIN_BACKDATED = 256;
+    private static final int[] NO_ROWS = new int[0];
+    private static final long[] NO_KEYS = new long[0];
+
+    /**
+     * The index as of one moment: positions [0, size()) of the sorted rows, oldest first.
+     */
+    public static class View {
+        /// sorted rows, positions [0, sortedSize) are never written again.
+        private final int[] rows;
+        private final long[] keys;
+        private final int sortedSize;
+        /// backdated rows not merged in yet, sorted, with their positions in the view in ascending order.
+        private final int[] backdatedRows;
+        private final long[] backdatedKeys;
+        private final int[] backdatedPositions;
+        private final int size;
+        private final int coveredRows;
+        private final int deletions;
+
+        View(int[] rows, long[] keys, int sortedSize, int coveredRows, int deletions) {
+            this(rows, keys, sortedSize, NO_ROWS, NO_KEYS, NO_ROWS, coveredRows, deletions);
+        }
+
+        View(int[] rows, long[] keys, int sortedSize, int[] backdatedRows, long[] backdatedKeys,
+             int[] backdatedPositions, int coveredRows, int deletions) {
+            this.rows = rows;
+            this.keys = keys;
+            this.sortedSize = sortedSize;
+            this.backdatedRows = backdatedRows;
+            this.backdatedKeys = backdatedKeys;
+            this.backdatedPositions = backdatedPositions;
+            this.size = sortedSize + backdatedRows.length;
+            this.coveredRows = coveredRows;
+            this.deletions = deletions;
+        }
+
+        /**
+         * Number of rows in the view, the store rows [0, coveredRows()) that are not deleted.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Store rows the view was built from, rows appended later are not in it.
+         */
+        public int coveredRows() {
+            return coveredRows;
+        }
+
+        /**
+         * Row number at a position in date order, position 0 is the oldest row.
+         */
+        public int rowAt(int position) {
+            if (position >= size) {
+                throw new IndexOutOfBoundsException("position " + position + " size " + size);
+            }
+            return row(position);
+        }
+
+        /**
+         * First position whose date is on or after the given day.
+         */
+        public int lowerBound(int epochDay) {
+            return search(epochDay * SECONDS_PER_DAY);
+        }
+
+        /**
+         * First position whose date is after the given day, so [lowerBound(start), upperBound(end)) covers start..end.
+         */
+        public int upperBound(int epochDay) {
+            return search((epochDay + 1) * SECONDS_PER_DAY);
+        }
+
+        /**
+         * The whole view newest first, nothing is sorted or copied.
+         */
+        public LedgerRenderer.RowSource newestFirst() {
+            return newestFirst(0, size);
+        }
+
+        /**
+         * Positions [from, to) newest first, e.g. newestFirst(lowerBound(start), upperBound(end)) for a period.
+         */
+        public LedgerRenderer.RowSource newestFirst(int from, int to) {
+            return new LedgerRenderer.RowSource() {
+                /// backdated rows before the last position read, a scan reads the next one along.
+                private int before;
+
+                @Override
+                public int size() {
+                    return to - from;
+                }
+
+                @Override
+                public int rowAt(int position) {
+                    if (backdatedRows.length == 0) {
+                        return rows[to - 1 - position];
+                    }
+                    before = backdatedBefore(to - 1 - position, before);
+                    return row(to - 1 - position, before);
+                }
+            };
+        }
+
+        private int row(int position) {
+            return backdatedRows.length == 0 ? rows[position] : row(position, backdatedBefore(position, 0));
+        }
+
+        private int row(int position, int before) {
+            if (before < backdatedPositions.length && backdatedPositions[before] == position) {
+                return backdatedRows[before];
+            }
+            return rows[position - before];
+        }
+
+        /// number of backdated rows at positions before the given one, hint is a guess checked first.
+        private int backdatedBefore(int position, int hint) {
+            for (int guess = Math.max(0, hint - 1); guess <= Math.min(hint, backdatedPositions.length); guess++) {
+                if ((guess == 0 || backdatedPositions[guess - 1] < position)
+                        && (guess == backdatedPositions.length || backdatedPositions[guess] >= position)) {
+                    return guess;
+                }
+            }
+            int low = 0;
+            int high = backdatedPositions.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (backdatedPositions[mid] < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /// first position with a key greater than or equal to the target.
+        private int search(long target) {
+            return DateIndex.search(keys, 0, sortedSize, target)
+                    + DateIndex.search(backdatedKeys, 0, backdatedKeys.length, target);
+        }
+    }
+
+    private final LedgerRows store;
+    private volatile View current = new View(NO_ROWS, NO_KEYS, 0, 0, 0);
+
+    public DateIndex(LedgerRows store) {
+        this.store = store;
+    }
+
+    /**
+     * The index caught up with the store. The view never changes, take one per report or query.
+     */
+    public View view() {
+        View view = current;
+        if (view.coveredRows == store.size() && view.deletions == store.getDeletedCount()) {
+            return view;
+        }
+        sync();
+        return current;
+    }
+
+    /**
+     * Bring the index up to date with rows appended to or deleted from the store since the last call.
+     * New rows that are already in order, as in a date ordered file or entries stamped "now", are not sorted.
+     */
+    public synchronized void sync() {
+        View view = current;
+        /// read before the rows are checked, a row deleted meanwhile is dropped now or by the next call.
+        int deletions = store.getDeletedCount();
+        int covered = view.coveredRows;
+        int total = store.size();
+        if (covered == total && view.deletions == deletions) {
+            return;
+        }
+        if (view.deletions != deletions) {
+            view = withoutDeleted(view, Math.max(view.rows.length, view.size + total - covered));
+        }
+        int[] rows = view.rows;
+        long[] keys = view.keys;
+        int size = view.sortedSize;
+        if (rows.length < size + total - covered) {
+            int capacity = Math.max(size + total - covered, rows.length + (rows.length >> 1));
+            rows = Arrays.copyOf(rows, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+
+        /// place the new rows after the sorted ones and sort that tail only if it is out of order,
+        /// readers of the current view never look past its sorted size.
+        boolean ordered = true;
+        int end = size;
+        for (int row = covered; row < total; row++) {
+            if (store.isDeleted(row)) {
+                continue;
+            }
+            rows[end] = row;
+            keys[end] = store.dateTimeKey(row);
+            ordered &= end == size || keys[end - 1] <= keys[end];
+            end++;
+        }
+        if (!ordered) {
+            LedgerStore.sortRows(rows, keys, size, end);
+        }
+
+        /// common case: every new row is at least as new as the newest sorted row.
+        if (size == 0 || end == size || keys[size] >= keys[size - 1]) {
+            current = new View(rows, keys, end, view.backdatedRows, view.backdatedKeys, view.backdatedPositions,
+                    total, deletions);
+            return;
+        }
+        current = addBackdated(view, rows, keys, end, total, deletions);
+    }
+
+    /// copy of the view's positions without the rows deleted since, in new sorted arrays of the given capacity.
+    private View withoutDeleted(View view, int capacity) {
+        int[] rows = new int[capacity];
+        long[] keys = new long[capacity];
+        int size = 0;
+        int backdated = 0;
+        for (int position = 0; position < view.size; position++) {
+            int row;
+            long key;
+            if (backdated < view.backdatedPositions.length && view.backdatedPositions[backdated] == position) {
+                row = view.backdatedRows[backdated];
+                key = view.backdatedKeys[backdated++];
+            } else {
+                row = view.rows[position - backdated];
+                key = view.keys[position - backdated];
+            }
+            if (!store.isDeleted(row)) {
+                rows[size] = row;
+                keys[size++] = key;
+            }
+        }
+        return new View(rows, keys, size, view.coveredRows, view.deletions);
+    }
+
+    /// the sorted tail [view.sortedSize, end) starts before the newest sorted row: its older rows join the
+    /// backdated ones, or everything is merged into new arrays once there are too many. The old view stays intact.
+    private static View addBackdated(View view, int[] rows, long[] keys, int end, int coveredRows, int deletions) {
+        int size = view.sortedSize;
+        /// tail rows from the newest sorted row on are plain appends.
+        int newer = search(keys, size, end, keys[size - 1]);
+        int[] oldRows = view.backdatedRows;
+        long[] oldKeys = view.backdatedKeys;
+        int count = oldRows.length + newer - size;
+        int[] backdatedRows = new int[count];
+        long[] backdatedKeys = new long[count];
+        int[] backdatedPositions = new int[count];
+
+        /// merge the older tail rows into the backdated ones, on equal keys the earlier row stays first.
+        int old = 0;
+        int incoming = size;
+        for (int out = 0; out < count; out++) {
+            if (incoming == newer || (old < oldRows.length && oldKeys[old] <= keys[incoming])) {
+                backdatedRows[out] = oldRows[old];
+                backdatedKeys[out] = oldKeys[old];
+                /// one more backdated row before it for every incoming row merged so far.
+                backdatedPositions[out] = view.backdatedPositions[old++] + incoming - size;
+            } else {
+                backdatedRows[out] = rows[incoming];
+                backdatedKeys[out] = keys[incoming];
+                /// after the sorted rows with the same key, as a row added later.
+                backdatedPositions[out] = search(keys, 0, size, keys[incoming++] + 1) + out;
+            }
+        }
+
+        if (count <= Math.max(MIN_BACKDATED, (int) Math.sqrt(size))) {
+            /// move the plain appends up to the sorted rows, past the end of every view handed out.
+            System.arraycopy(rows, newer, rows, size, end - newer);
+            System.arraycopy(keys, newer, keys, size, end - newer);
+            return new View(rows, keys, size + end - newer, backdatedRows, backdatedKeys, backdatedPositions,
+                    coveredRows, deletions);
+        }
+
+        int total = size + count + end - newer;
+        int capacity = Math.max(total, rows.length);
+        int[] mergedRows = new int[capacity];
+        long[] mergedKeys = new long[capacity];
+
+        /// rows older than the oldest backdated row keep their place, copy them in one go.
+        int sorted = backdatedPositions[0];
+        System.arraycopy(rows, 0, mergedRows, 0, sorted);
+        System.arraycopy(keys, 0, mergedKeys, 0, sorted);
+
+        int backdated = 0;
+        int out = sorted;
+        while (sorted < size && backdated < count) {
+            if (backdatedKeys[backdated] < keys[sorted]) {
+                mergedRows[out] = backdatedRows[backdated];
+                mergedKeys[out++] = backdatedKeys[backdated++];
+            } else {
+                mergedRows[out] = rows[sorted];
+                mergedKeys[out++] = keys[sorted++];
+            }
+        }
+        System.arraycopy(rows, sorted, mergedRows, out, size - sorted);
+        System.arraycopy(keys, sorted, mergedKeys, out, size - sorted);
+        out += size - sorted;
+        System.arraycopy(backdatedRows, backdated, mergedRows, out, count - backdated);
+        System.arraycopy(backdatedKeys, backdated, mergedKeys, out, count - backdated);
+        out += count - backdated;
+        System.arraycopy(rows, newer, mergedRows, out, end - newer);
+        System.arraycopy(keys, newer, mergedKeys, out, end - newer);
+        return new View(mergedRows, mergedKeys, total, coveredRows, deletions);
+    }
+
+    /// first index in [from, to) of sorted keys with a key greater than or equal to the target.
+    private static int search(long[] keys, int from, int to, long target) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int size() {
+        return view().size();
+    }
+
+    /**
+     * The whole index newest first, see View.newestFirst.
+     */
+    public LedgerRenderer.RowSource newestFirst() {
+        return view().newestFirst();
+    }
+}
@@ -0,0 +1,230 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from description words to ledger rows, for the description criterion of the custom search.
+ * Descriptions are lower cased and split into tokens, runs of letters and digits, each distinct description
+ * once when its first row is indexed. A query term matches a description when it is part of one of its tokens,
+ * "voice" matches "Invoice 1001 paid", and a query with several terms needs all of them.
+ * <p>
+ * Terms are looked up in the token vocabulary rather than in the rows: through a trigram index over the tokens,
+ * or with -Dtracker.trigrams=false by testing every token, which saves the trigram lists. Row lists of the
+ * matching tokens are merged and intersected in row order.
+ * Lookups and catching up share one lock, lookups return copies, as in VendorIndex.
+ */
+public class DescriptionIndex {
+
+    private final LedgerStore store;
+    private final boolean trigrams;
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    private final List<String> tokens = new ArrayList<>();
+    /// rows per token id, in row order.
+    private final List<IntList> postings = new ArrayList<>();
+    /// token ids per trigram, three chars packed into a long.
+    private final Map<Long, IntList> trigramTokens = new HashMap<>();
+    /// distinct token ids per description dictionary id, so each distinct description is tokenized once.
+    private int[][] tokensByDescriptionId = new int[0][];
+    private int indexedRows;
+    /// deletions of the store already taken out of the postings.
+    private int removedRows;
+
+    public DescriptionIndex(LedgerStore store) {
+        this.store = store;
+        this.trigrams = !"false".equalsIgnoreCase(System.getProperty("tracker.trigrams"));
+    }
+
+    /**
+     * Index rows appended to the store since the last call and drop the rows deleted since, as VendorIndex does.
+     */
+    public synchronized void sync() {
+        int total = store.size();
+        StringDictionary descriptions = store.getDescriptions();
+        if (tokensByDescriptionId.length < descriptions.size()) {
+            tokensByDescriptionId = Arrays.copyOf(tokensByDescriptionId, descriptions.size());
+        }
+        for (int row = indexedRows; row < total; row++) {
+            int descriptionId = store.getDescriptionId(row);
+            int[] ids = tokensByDescriptionId[descriptionId];
+            if (ids == null) {
+                ids = tokenIds(descriptions.decode(descriptionId));
+                tokensByDescriptionId[descriptionId] = ids;
+            }
+            for (int tokenId : ids) {
+                postings.get(tokenId).add(row);
+            }
+        }
+        indexedRows = total;
+
+        int deletions = store.getDeletedCount();
+        while (removedRows < deletions && store.getDeletedRow(removedRows) < total) {
+            int row = store.getDeletedRow(removedRows++);
+            for (int tokenId : tokensByDescriptionId[store.getDescriptionId(row)]) {
+                postings.get(tokenId).removeSorted(row);
+            }
+        }
+    }
+
+    /**
+     * Rows whose description matches every term of the text.
+     *
+     * @param text one or more terms, see terms.
+     * @return a copy of the matching rows in row order, empty if none or if the text has no terms.
+     */
+    public synchronized int[] find(String text) {
+        sync();
+        int[] result = null;
+        for (String term : terms(text)) {
+            int[] rows = rowsContaining(term);
+            result = result == null ? rows : intersect(result, rows);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    /**
+     * Number of distinct tokens indexed so far.
+     */
+    public synchronized int getTokenCount() {
+        return tokens.size();
+    }
+
+    /**
+     * Distinct lower case tokens of a text in order of appearance, the terms of a query and the tokens of a description.
+     */
+    static List<String> terms(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        Set<String> terms = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                terms.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /// token ids of a description, new tokens are added to the vocabulary and the trigram lists.
+    private int[] tokenIds(String description) {
+        List<String> words = terms(description);
+        int[] ids = new int[words.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String token = words.get(i);
+            Integer id = tokenIds.get(token);
+            if (id == null) {
+                id = tokens.size();
+                tokenIds.put(token, id);
+                tokens.add(token);
+                postings.add(new IntList(4));
+                if (trigrams) {
+                    for (int at = 0; at + 3 <= token.length(); at++) {
+                        IntList list = trigramTokens.computeIfAbsent(trigram(token, at), key -> new IntList(4));
+                        /// a token repeating a trigram, like "aaaa", is listed once.
+                        if (list.isEmpty() || list.get(list.size() - 1) != id) {
+                            list.add(id);
+                        }
+                    }
+                }
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /// rows with a token containing the term, merged from the posting lists of those tokens.
+    private int[] rowsContaining(String term) {
+        IntList matching = tokensContaining(term);
+        if (matching.size() == 1) {
+            return postings.get(matching.get(0)).toArray();
+        }
+        int count = 0;
+        for (int i = 0; i < matching.size(); i++) {
+            count += postings.get(matching.get(i)).size();
+        }
+        int[] rows = new int[count];
+        int at = 0;
+        for (int i = 0; i < matching.size(); i++) {
+            IntList list = postings.get(matching.get(i));
+            for (int j = 0; j < list.size(); j++) {
+                rows[at++] = list.get(j);
+            }
+        }
+        /// a description can hold two tokens containing the term, keep its rows once.
+        Arrays.sort(rows);
+        int distinct = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (i == 0 || rows[i] != rows[i - 1]) {
+                rows[distinct++] = rows[i];
+            }
+        }
+        return distinct == rows.length ? rows : Arrays.copyOf(rows, distinct);
+    }
+
+    private IntList tokensContaining(String term) {
+        IntList matching = new IntList();
+        if (term.length() < 3 || !trigrams) {
+            /// short terms have no trigram, test the whole vocabulary.
+            for (int id = 0; id < tokens.size(); id++) {
+                if (tokens.get(id).contains(term)) {
+                    matching.add(id);
+                }
+            }
+            return matching;
+        }
+        /// candidates come from the rarest trigram of the term, each one is then checked.
+        IntList candidates = null;
+        for (int at = 0; at + 3 <= term.length(); at++) {
+            IntList list = trigramTokens.get(trigram(term, at));
+            if (list == null) {
+                return matching;
+            }
+            if (candidates == null || list.size() < candidates.size()) {
+                candidates = list;
+            }
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            int id = candidates.get(i);
+            if (tokens.get(id).contains(term)) {
+                matching.add(id);
+            }
+        }
+        return matching;
+    }
+
+    private static long trigram(String token, int at) {
+        return (long) token.charAt(at) << 32 | (long) token.charAt(at + 1) << 16 | token.charAt(at + 2);
+    }
+
+    /// rows in both sorted lists.
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
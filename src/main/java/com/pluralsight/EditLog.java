@@ -0,0 +1,221 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of corrections to a transactions file, kept next to it as transactions.edits, so fixing one
+ * row of a large ledger is one short append instead of a rewrite of the file.
+ * <p>
+ * One record per line, keyed by the transaction id (see TransactionIds) and the CRC32 of the row as it was
+ * before the change, so a record is only ever applied to the row it was written for:
+ * <pre>
+ * U|id|crc|yyyy-MM-dd|HH:mm:ss|description|vendor|amount    the row now reads like this
+ * D|id|crc                                                   the row is deleted
+ * </pre>
+ * Ledger appends records through a JournalWriter and replays them after every load. Compaction writes the
+ * rows back to the transactions file as they are now and empties the log.
+ */
+public class EditLog {
+
+    private static final char UPDATE = 'U';
+    private static final char DELETE = 'D';
+
+    private EditLog() {
+    }
+
+    /**
+     * One update or delete read from the log.
+     */
+    public static class Record {
+        private final int line;
+        private final int id;
+        private final long checksum;
+        private final boolean delete;
+        private final int epochDay;
+        private final int secondOfDay;
+        private final String description;
+        private final String vendor;
+        private final long cents;
+
+        Record(int line, int id, long checksum, boolean delete, int epochDay, int secondOfDay, String description,
+               String vendor, long cents) {
+            this.line = line;
+            this.id = id;
+            this.checksum = checksum;
+            this.delete = delete;
+            this.epochDay = epochDay;
+            this.secondOfDay = secondOfDay;
+            this.description = description;
+            this.vendor = vendor;
+            this.cents = cents;
+        }
+
+        /**
+         * Line number in the log, for messages.
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * CRC32 of the row's transactions file line before the change, see checksum.
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public boolean isDelete() {
+            return delete;
+        }
+
+        public int getEpochDay() {
+            return epochDay;
+        }
+
+        public int getSecondOfDay() {
+            return secondOfDay;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getVendor() {
+            return vendor;
+        }
+
+        public long getCents() {
+            return cents;
+        }
+    }
+
+    /**
+     * Records of a log in the order they were written, and the lines that could not be read.
+     */
+    public static class Result {
+        private final List<Record> records;
+        private final List<String> errors;
+
+        Result(List<Record> records, List<String> errors) {
+            this.records = records;
+            this.errors = errors;
+        }
+
+        public List<Record> getRecords() {
+            return records;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * Record replacing the row with the given id, whose line was oldLine, by newLine.
+     */
+    static String update(int id, String oldLine, String newLine) {
+        return UPDATE + "|" + id + "|" + Long.toHexString(checksum(oldLine)) + "|" + newLine;
+    }
+
+    /**
+     * Record deleting the row with the given id, whose line was oldLine.
+     */
+    static String delete(int id, String oldLine) {
+        return DELETE + "|" + id + "|" + Long.toHexString(checksum(oldLine));
+    }
+
+    /**
+     * CRC32 of a transactions file line without its line break.
+     */
+    static long checksum(String line) {
+        CRC32 crc = new CRC32();
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Read every record of a log. A missing log has none, a line that can not be read, e.g. the last one
+     * after a crash in the middle of writing it, is skipped and listed in the errors.
+     */
+    static Result read(Path path) throws IOException {
+        List<Record> records = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        if (Files.notExists(path)) {
+            return new Result(records, errors);
+        }
+        byte[] buf = Files.readAllBytes(path);
+        int lineNumber = 0;
+        int lineStart = 0;
+        while (lineStart < buf.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < buf.length && buf[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            lineNumber++;
+            int contentEnd = lineEnd > lineStart && buf[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd > lineStart) {
+                try {
+                    records.add(parse(lineNumber, buf, lineStart, contentEnd));
+                } catch (IllegalArgumentException e) {
+                    errors.add("line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new Result(records, errors);
+    }
+
+    /// "U|id|crc|" followed by a transactions file line, or "D|id|crc".
+    private static Record parse(int line, byte[] buf, int start, int end) {
+        int[] cuts = new int[7];
+        int found = 0;
+        for (int i = start; i < end && found < cuts.length; i++) {
+            if (buf[i] == '|') {
+                cuts[found++] = i;
+            }
+        }
+        char kind = (char) buf[start];
+        if (cuts[0] != start + 1 || (kind != UPDATE && kind != DELETE)) {
+            throw new IllegalArgumentException("expected a record starting with U| or D|");
+        }
+        if (kind == DELETE ? found != 2 : found != 7) {
+            throw new IllegalArgumentException("expected " + (kind == DELETE ? 3 : 8) + " fields separated by '|' but found "
+                    + (found + 1));
+        }
+        int id = (int) parseNumber(buf, cuts[0] + 1, cuts[1], 10, Integer.MAX_VALUE, "id");
+        int checksumEnd = kind == DELETE ? end : cuts[2];
+        long checksum = parseNumber(buf, cuts[1] + 1, checksumEnd, 16, 0xFFFF_FFFFL, "checksum");
+        if (kind == DELETE) {
+            return new Record(line, id, checksum, true, 0, 0, null, null, 0);
+        }
+        return new Record(line, id, checksum, false,
+                CsvLoader.parseEpochDay(buf, cuts[2] + 1, cuts[3]),
+                CsvLoader.parseSecondOfDay(buf, cuts[3] + 1, cuts[4]),
+                new String(buf, cuts[4] + 1, cuts[5] - cuts[4] - 1, StandardCharsets.UTF_8),
+                new String(buf, cuts[5] + 1, cuts[6] - cuts[5] - 1, StandardCharsets.UTF_8),
+                CsvLoader.parseAmount(buf, cuts[6] + 1, end));
+    }
+
+    private static long parseNumber(byte[] buf, int start, int end, int radix, long max, String field) {
+        String text = new String(buf, start, end - start, StandardCharsets.US_ASCII);
+        try {
+            long value = Long.parseLong(text, radix);
+            if (value < 0 || value > max) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + field + " '" + text + "'");
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package com.pluralsight;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.TemporalAdjusters;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntPredicate;
 
 public class FinancialTracker {
 
@@ -15,8 +17,23 @@ public class FinancialTracker {
        Shared data and formatters
        ------------------------------------------------------------------ */
 
-    private static final ArrayList<Transaction> transactions = new ArrayList<>();
     private static final String FILE_NAME = "transactions.csv";
+    /// the transactions file with its store, indexes, rollups, journal and snapshot. The ledger screens and
+    /// period reports go through book.getRows() and book.getDateIndex(), the mapped file in lazy mode.
+    private static final Ledger book = new Ledger(Path.of(FILE_NAME));
+    private static final LedgerStore ledger = book.getStore();
+    /// case-insensitive vendor name to rows index, used by vendor search.
+    private static final VendorIndex vendorIndex = book.getVendorIndex();
+    /// per day, month, year and vendor totals, kept up to date on every append.
+    private static final LedgerAggregates aggregates = book.getAggregates();
+    private static final QueryEngine queryEngine = book.getQueryEngine();
+    /// rows per page before the pager asks what to do next, -Dtracker.pageSize overrides it.
+    private static final int PAGE_SIZE = Integer.getInteger("tracker.pageSize", 50);
+    private static boolean shutDown;
+    /// follows transactions.csv for rows other programs append, with -Dtracker.tail=true. Its messages wait for
+    /// the home screen so they do not land in the middle of a prompt.
+    private static LedgerTailer tailer;
+    private static final Queue<String> tailNotices = new ConcurrentLinkedQueue<>();
 
     private static final String DATE_PATTERN = "yyyy-MM-dd";
     private static final String TIME_PATTERN = "HH:mm:ss";
@@ -41,18 +58,27 @@ public class FinancialTracker {
        Main menu
        ------------------------------------------------------------------ */
     public static void main(String[] args) {
+        /// any arguments run one batch command without the menu, see BatchCli.
+        if (args.length > 0) {
+            System.exit(BatchCli.run(args, System.in, System.out, System.err));
+        }
         loadTransactions(FILE_NAME);
+        startTail(FILE_NAME);
+        openJournal(FILE_NAME);
+        registerMetrics();
 
         Scanner scanner = new Scanner(System.in);
         boolean running = true;
 
         while (running) {
 
+            printTailNotices();
             System.out.println(YELLOW + "\nWelcome to Financial Tracker App\n" + RESET);
             System.out.println(GREEN + "=== Home Screen ====" + RESET);
             System.out.println(GREEN + "Choose an option:" + RESET);
             System.out.println(GREEN + "D) Add Deposit" + RESET);
             System.out.println(GREEN + "P) Make Payment (Debit)" + RESET);
+            System.out.println(GREEN + "I) Import Statement" + RESET);
             System.out.println(GREEN + "L) Ledger" + RESET);
             System.out.println(RED + "X) Exit" + RESET);
 
@@ -61,12 +87,16 @@ public class FinancialTracker {
             switch (input.toUpperCase()) {
                 case "D" -> addDeposit(scanner);
                 case "P" -> addPayment(scanner);
+                case "I" -> importStatement(scanner);
                 case "L" -> ledgerMenu(scanner);
+                /// not listed on the menu, timings for troubleshooting.
+                case "S" -> printStats();
                 case "X" -> running = false;
                 default -> System.out.println("Invalid option");
             }
         }
         scanner.close();
+        shutdown();
     }
 
     /* ------------------------------------------------------------------
@@ -74,14 +104,17 @@ public class FinancialTracker {
        ------------------------------------------------------------------ */
 
     /**
-     * Create file if it does not exist, read file and added transactions to transactions list.
+     * Create file if it does not exist, read file and added transactions to the ledger store.
      *
      * @param fileName is set to "transactions.csv".
      */
     public static void loadTransactions(String fileName) {
         File file = new File(fileName);
         try {
-            if (!file.exists()) {
+            if (book.isPartitioned()) {
+                System.out.println("Found monthly files in " + book.getPartitionDir()
+                        + ", all your transactions will be added and saved there.");
+            } else if (!file.exists()) {
                 file.createNewFile();
                 System.out.println("File created: " + fileName);
             } else {
@@ -92,27 +125,140 @@ public class FinancialTracker {
         } catch (Exception e) {
             System.out.println(RED + "Error creating file." + e + RESET);
         }
-        /// read file and added transaction to transactions list
+        /// restore the last snapshot if it still matches the file, then read the lines after it in parallel chunks,
+        /// or in lazy mode only index where each line starts. bad lines are skipped and reported.
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(fileName));
+            printLoadReport(Boolean.getBoolean("tracker.lazy") ? book.loadLazy() : book.load());
+        } catch (Exception e) {
+            System.out.println(RED + "Error, Unable to read file. " + fileName + e + RESET);
+        }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                LocalDate date = LocalDate.parse(parts[0], DATE_FMT);
-                LocalTime time = LocalTime.parse(parts[1], TIME_FMT);
-                String description = parts[2];
-                String vendor = parts[3];
-                double amount = Double.parseDouble(parts[4]);
+    }
 
-                transactions.add(new Transaction(date, time, description, vendor, amount));
-            }
-            reader.close();
+    /**
+     * Load every transaction into memory when lazy mode is on, for the screens that need the vendor index,
+     * the query engine or duplicate detection.
+     *
+     * @return false if the file could not be read.
+     */
+    private static boolean loadAll() {
+        if (!book.isLazy()) {
+            return true;
+        }
+        System.out.println("Loading all transactions...");
+        try {
+            printLoadReport(book.loadAll());
+            return true;
+        } catch (Exception e) {
+            System.out.println(RED + "Error, Unable to read file. " + FILE_NAME + e + RESET);
+            return false;
+        }
+    }
+
+    private static void printLoadReport(Ledger.LoadReport report) {
+        if (report.getSnapshotProblem() != null) {
+            System.out.println(YELLOW + "Snapshot not used, read the whole file. " + report.getSnapshotProblem() + RESET);
+        }
+        for (String error : report.getCsvResult().getErrors()) {
+            System.out.println(RED + "Skipped " + error + RESET);
+        }
+        for (String error : report.getEditErrors()) {
+            System.out.println(RED + "Skipped " + error + RESET);
+        }
+    }
+
+    /**
+     * Open the append journal on the transactions file and make sure it is flushed when the JVM exits.
+     * Sync policy comes from -Dtracker.journal.sync=per-record|window|shutdown (default per-record),
+     * the commit window from -Dtracker.journal.windowMillis (default 50).
+     *
+     * @param fileName is set to "transactions.csv".
+     */
+    private static void openJournal(String fileName) {
+        JournalWriter.SyncPolicy policy = JournalWriter.SyncPolicy.parse(System.getProperty("tracker.journal.sync"));
+        long windowMillis = Long.getLong("tracker.journal.windowMillis", 50L);
+        try {
+            book.openJournal(policy, windowMillis);
+            Runtime.getRuntime().addShutdownHook(new Thread(FinancialTracker::shutdown));
+        } catch (IOException e) {
+            System.out.println(RED + "Error opening " + fileName + " for writing. " + e + RESET);
+        }
+    }
+
+    /**
+     * Follow the transactions file with -Dtracker.tail=true, so rows other programs append show up without a
+     * restart. -Dtracker.tail.pollMillis sets the longest wait between two checks (default 1000).
+     *
+     * @param fileName is set to "transactions.csv".
+     */
+    private static void startTail(String fileName) {
+        if (!Boolean.getBoolean("tracker.tail")) {
+            return;
+        }
+        try {
+            book.startTail();
+            tailer = new LedgerTailer(book, Long.getLong("tracker.tail.pollMillis", 1000L), report -> {
+                if (report.getRows() > 0) {
+                    tailNotices.add(GREEN + "Added " + report.getRows() + " new transactions from " + fileName + "." + RESET);
+                }
+                for (String error : report.getErrors()) {
+                    tailNotices.add(RED + "Skipped " + error + RESET);
+                }
+                if (report.getProblem() != null) {
+                    tailNotices.add(YELLOW + report.getProblem() + RESET);
+                }
+            });
+        } catch (Exception e) {
+            System.out.println(RED + "Error following " + fileName + " for new transactions. " + e + RESET);
+        }
+    }
 
+    private static void printTailNotices() {
+        String notice;
+        while ((notice = tailNotices.poll()) != null) {
+            System.out.println(notice);
+        }
+    }
+
+    /**
+     * Publish the counters of Metrics over JMX, e.g. for jconsole. Metrics are off with -Dtracker.metrics=false.
+     */
+    private static void registerMetrics() {
+        try {
+            Metrics.register();
         } catch (Exception e) {
-            System.out.println(RED + "Error, Unable to read file. " + fileName + e + RESET);
+            System.out.println(RED + "Error registering metrics with JMX. " + e + RESET);
         }
+    }
 
+    /**
+     * Print load, append, query and render counters and latencies collected since start up.
+     */
+    private static void printStats() {
+        System.out.println(YELLOW + "=== Stats ===" + RESET);
+        System.out.println(Metrics.get().summary());
+    }
+
+    /**
+     * Flush and close the journal, then save the snapshot, disabled with -Dtracker.snapshot=false.
+     * Runs once, on exit or from the shutdown hook.
+     */
+    private static synchronized void shutdown() {
+        if (shutDown) {
+            return;
+        }
+        shutDown = true;
+        try {
+            if (tailer != null) {
+                tailer.close();
+            }
+            book.close();
+            if (book.getCompactionFailure() != null) {
+                System.out.println(RED + "Error compacting " + FILE_NAME + ". " + book.getCompactionFailure() + RESET);
+            }
+        } catch (IOException e) {
+            System.out.println(RED + "Error saving transactions to file. " + e + RESET);
+        }
     }
 
     /* ------------------------------------------------------------------
@@ -126,8 +272,8 @@ public class FinancialTracker {
      */
     private static void addDeposit(Scanner scanner) {
 
-        String date, time, description, vendor, amountS;
-        double amount = 0.0;
+        String description, vendor, amountS;
+        long amount = 0;
         LocalDate enterDate;
         LocalTime enterTime;
         LocalDateTime dateTime;
@@ -143,8 +289,6 @@ public class FinancialTracker {
 
                 enterDate = dateTime.toLocalDate();
                 enterTime = dateTime.toLocalTime();
-                date = enterDate.format(DATE_FMT);
-                time = enterTime.format(TIME_FMT);
 
                 System.out.print("Description: ");
                 description = scanner.nextLine().trim();
@@ -154,7 +298,7 @@ public class FinancialTracker {
                 try {
                     System.out.print("Amount: ");
                     amountS = scanner.nextLine();
-                    amount = parseDouble(amountS);
+                    amount = parseCents(amountS);
 
                 } catch (Exception e1) {
                     System.out.println(RED + "Invalid entry. Please enter again with positive numbers." + RESET);
@@ -162,18 +306,11 @@ public class FinancialTracker {
 
                 /// if entered amount is positive, add deposit to list and append to file.
                 if (amount > 0) {
-                    transactions.add(new Transaction(enterDate, enterTime, description, vendor, amount));
-
-                    BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME, true));
-
-                    String outPut = String.format("%s|%s|%s|%s|%.2f", date, time, description, vendor, amount);
-                    writer.write(outPut);
-                    writer.newLine();
+                    int row = book.add(enterDate, enterTime, description, vendor, amount);
+                    String outPut = book.getRows().toCsvLine(row);
 
                     System.out.println(GREEN + "Successfully added new deposit: \n" + outPut + RESET);
                     isDone = true;
-
-                    writer.close();
                 } else {
                     System.out.println(RED + "Invalid entry. Please enter again with positive numbers." + RESET);
                 }
@@ -194,8 +331,8 @@ public class FinancialTracker {
      */
     private static void addPayment(Scanner scanner) {
 
-        String date, time, description, vendor, amountS;
-        double amount = 0.0;
+        String description, vendor, amountS;
+        long amount = 0;
         LocalDate enterDate;
         LocalTime enterTime;
         LocalDateTime dateTime;
@@ -211,8 +348,6 @@ public class FinancialTracker {
 
                 enterDate = dateTime.toLocalDate();
                 enterTime = dateTime.toLocalTime();
-                date = enterDate.format(DATE_FMT);
-                time = enterTime.format(TIME_FMT);
 
 
                 System.out.print("Description: ");
@@ -223,7 +358,7 @@ public class FinancialTracker {
                 try {
                     System.out.print("Amount: ");
                     amountS = scanner.nextLine();
-                    amount = parseDouble(amountS);
+                    amount = parseCents(amountS);
 
                 } catch (Exception e1) {
                     System.out.println(RED + "Invalid entry. Please enter again with positive numbers." + RESET);
@@ -232,18 +367,12 @@ public class FinancialTracker {
                 /// if entered amount is positive, change amount to negative =, then add debit to list and append to file.
                 if (amount > 0) {
                     amount *= -1;
-                    transactions.add(new Transaction(enterDate, enterTime, description, vendor, amount));
-
-                    BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME, true));
-
-                    String outPut = String.format("%s|%s|%s|%s|%.2f", date, time, description, vendor, amount);
-                    writer.write(outPut);
-                    writer.newLine();
+                    int row = book.add(enterDate, enterTime, description, vendor, amount);
+                    String outPut = book.getRows().toCsvLine(row);
 
                     System.out.println(GREEN + "Successfully added new payment: \n" + outPut + RESET);
 
                     isDone = true;
-                    writer.close();
 
                 } else {
                     System.out.println(RED + "Invalid entry. Please enter again with positive numbers." + RESET);
@@ -258,14 +387,33 @@ public class FinancialTracker {
 
     }
 
+    /**
+     * Prompt for a statement file in the transactions.csv format and add the rows that are not in the ledger yet.
+     *
+     * @param scanner used for user input
+     */
+    private static void importStatement(Scanner scanner) {
+        System.out.print("Statement file to import: ");
+        String fileName = scanner.nextLine().trim();
+        if (fileName.isEmpty() || !loadAll()) {
+            return;
+        }
+        try {
+            StatementImporter.Result result = StatementImporter.importFile(book, Path.of(fileName));
+            for (String error : result.getErrors()) {
+                System.out.println(RED + "Rejected " + error + RESET);
+            }
+            System.out.println(GREEN + "Imported " + result.getImported() + " transactions, skipped "
+                    + result.getDuplicates() + " duplicates, rejected " + result.getRejected() + " lines." + RESET);
+        } catch (Exception e) {
+            System.out.println(RED + "Error importing " + fileName + ". " + e + RESET);
+        }
+    }
+
     /* ------------------------------------------------------------------
        Ledger menu
        ------------------------------------------------------------------ */
     private static void ledgerMenu(Scanner scanner) {
-        /// Sort newest to oldest: date first, then time
-        transactions.sort(Comparator.comparing(Transaction::getDate)
-                .thenComparing(Transaction::getTime).reversed());
-
         boolean running = true;
         while (running) {
             System.out.println(BLUE + "== Ledger ==" + RESET);
@@ -274,16 +422,20 @@ public class FinancialTracker {
             System.out.println(BLUE + "D) Deposits" + RESET);
             System.out.println(BLUE + "P) Payments" + RESET);
             System.out.println(BLUE + "R) Reports" + RESET);
+            System.out.println(BLUE + "E) Edit or Delete" + RESET);
+            System.out.println(BLUE + "X) Export" + RESET);
             System.out.println(GREEN + "H) Home" + RESET);
 
             String input = scanner.nextLine().trim();
 
 
             switch (input.toUpperCase()) {
-                case "A" -> displayLedger();
-                case "D" -> displayDeposits();
-                case "P" -> displayPayments();
+                case "A" -> displayLedger(scanner);
+                case "D" -> displayDeposits(scanner);
+                case "P" -> displayPayments(scanner);
                 case "R" -> reportsMenu(scanner);
+                case "E" -> editTransaction(scanner);
+                case "X" -> exportTransactions(scanner);
                 case "H" -> running = false;
                 default -> System.out.println("Invalid option");
             }
@@ -293,66 +445,339 @@ public class FinancialTracker {
     /* ------------------------------------------------------------------
        Display helpers: show data in neat columns
        ------------------------------------------------------------------ */
-    private static void displayLedger() {
+    private static void displayLedger(Scanner scanner) {
         System.out.println(BLUE2 + " All Transactions: " + RESET);
         System.out.println(firstLine);
 
-        ///print all transactions in column format
+        ///print all transactions in column format, one page at a time
         try {
-            for (Transaction transaction : transactions) {
-                System.out.println(transaction);
-            }
+            showRows(scanner, book.getDateIndex().newestFirst());
+            printTotals("All transactions", book.overall());
         } catch (Exception e) {
             System.out.println(RED + "Error displaying list. " + e + RESET);
         }
 
     }
 
-    private static void displayDeposits() {
+    private static void displayDeposits(Scanner scanner) {
         System.out.println(BLUE2 + " All Deposits: " + RESET);
         System.out.println(firstLine);
 
         ///print all deposits in column format
         try {
-            for (Transaction transaction : transactions) {
-                double amount = transaction.getAmount();
-                if (amount > 0) {
-
-                    System.out.println(transaction);
+            LedgerRows rows = book.getRows();
+            IntList deposits = new IntList();
+            LedgerRenderer.RowSource all = book.getDateIndex().newestFirst();
+            long started = Metrics.start();
+            for (int position = 0; position < all.size(); position++) {
+                int row = all.rowAt(position);
+                if (rows.getCents(row) > 0) {
+                    deposits.add(row);
                 }
             }
+            Metrics.query(started, all.size(), deposits.size());
+            showRows(scanner, LedgerRenderer.RowSource.of(deposits.toArray()));
         } catch (Exception e) {
             System.out.println(RED + "Error displaying list." + e + RESET);
         }
 
     }
 
-    private static void displayPayments() {
+    private static void displayPayments(Scanner scanner) {
         System.out.println(BLUE2 + " All Payments: " + RESET);
         System.out.println(firstLine);
 
         ///print all payments in column format.
         try {
-            for (Transaction transaction : transactions) {
-                double amount = transaction.getAmount();
-                if (amount < 0) {
-
-                    System.out.println(transaction);
+            LedgerRows rows = book.getRows();
+            IntList payments = new IntList();
+            LedgerRenderer.RowSource all = book.getDateIndex().newestFirst();
+            long started = Metrics.start();
+            for (int position = 0; position < all.size(); position++) {
+                int row = all.rowAt(position);
+                if (rows.getCents(row) < 0) {
+                    payments.add(row);
                 }
             }
+            Metrics.query(started, all.size(), payments.size());
+            showRows(scanner, LedgerRenderer.RowSource.of(payments.toArray()));
         } catch (Exception e) {
             System.out.println(RED + "Error displaying list." + e + RESET);
         }
 
     }
 
+    /**
+     * Print rows a page at a time. Short lists print straight away, longer ones offer
+     * next/previous page, jump to a date and show all, so only rows that are shown get formatted.
+     *
+     * @param scanner used for the paging prompt.
+     * @param rows    rows to show, newest first.
+     */
+    private static void showRows(Scanner scanner, LedgerRenderer.RowSource rows) throws IOException {
+        /// formats rows into a reused buffer and writes them to the console in large chunks.
+        LedgerRenderer renderer = new LedgerRenderer(book.getRows(), System.out);
+        int total = rows.size();
+        int start = 0;
+
+        while (true) {
+            int end = Math.min(start + PAGE_SIZE, total);
+            renderer.render(rows, start, end);
+            if (total <= PAGE_SIZE) {
+                return;
+            }
+
+            System.out.println(YELLOW + "Showing " + (start + 1) + "-" + end + " of " + total + RESET);
+            System.out.println(YELLOW + "N) Next page  P) Previous page  J) Jump to date  A) Show the rest  Q) Done" + RESET);
+            String input = scanner.nextLine().trim();
+
+            switch (input.toUpperCase()) {
+                case "", "N" -> {
+                    if (end == total) {
+                        System.out.println("This is the last page.");
+                        return;
+                    }
+                    start = end;
+                }
+                case "P" -> start = Math.max(0, start - PAGE_SIZE);
+                case "J" -> {
+                    LocalDate date = promptOptionalDate(scanner, "Jump to date 'yyyy-MM-dd': ");
+                    if (date != null) {
+                        start = Math.min(firstPositionOnOrBefore(rows, (int) date.toEpochDay()), Math.max(0, total - 1));
+                    }
+                }
+                case "A" -> {
+                    renderer.render(rows, end, total);
+                    return;
+                }
+                case "Q" -> {
+                    return;
+                }
+                default -> {
+                    System.out.println("Invalid option");
+                    continue;
+                }
+            }
+            System.out.println(firstLine);
+        }
+    }
+
+    /**
+     * Print one summary line of deposit, payment and net totals.
+     *
+     * @param label  what the totals cover.
+     * @param totals rollup to print.
+     */
+    private static void printTotals(String label, LedgerAggregates.Totals totals) {
+        System.out.println(YELLOW + label + ": " + totals.getCount() + " transactions, deposits $"
+                + money(totals.getDepositCents()) + ", payments $" + money(totals.getPaymentCents())
+                + ", net $" + money(totals.getNetCents()) + RESET);
+    }
+
+    /// format cents as a decimal amount, e.g. -1234 as -12.34.
+    private static String money(long cents) {
+        return MoneyCodec.format(cents);
+    }
+
+    /// binary search a newest first list for the first row dated on or before the given day.
+    private static int firstPositionOnOrBefore(LedgerRenderer.RowSource rows, int epochDay) {
+        LedgerRows ledgerRows = book.getRows();
+        int low = 0;
+        int high = rows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ledgerRows.getEpochDay(rows.rowAt(mid)) > epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Export all transactions, deposits or payments of a date range newest first to a file, without the console
+     * colors and column widths. The file name picks the format: .csv, .jsonl, and .gz for gzip.
+     *
+     * @param scanner used for user input
+     */
+    private static void exportTransactions(Scanner scanner) {
+        if (!loadAll()) {
+            return;
+        }
+        System.out.print("Export to file, e.g. ledger.csv, ledger.jsonl or ledger.csv.gz (empty to go back): ");
+        String fileName = scanner.nextLine().trim();
+        if (fileName.isEmpty()) {
+            return;
+        }
+        System.out.print("A) All  D) Deposits  P) Payments: ");
+        String type = scanner.nextLine().trim().toUpperCase();
+        System.out.println("Leave a date empty for no limit.");
+        LocalDate start = promptOptionalDate(scanner, "Start date 'yyyy-MM-dd': ");
+        LocalDate end = promptOptionalDate(scanner, "End date 'yyyy-MM-dd': ");
+
+        IntPredicate filter = switch (type) {
+            case "D" -> row -> ledger.getCents(row) > 0;
+            case "P" -> row -> ledger.getCents(row) < 0;
+            default -> null;
+        };
+        try {
+            DateIndex.View view = book.getDateIndex().view();
+            int from = start == null ? 0 : view.lowerBound((int) start.toEpochDay());
+            int to = end == null ? view.size() : view.upperBound((int) end.toEpochDay());
+            long exported = LedgerExporter.export(ledger, view.newestFirst(from, Math.max(from, to)), filter,
+                    book.getIds(), Path.of(fileName));
+            System.out.println(GREEN + "Exported " + exported + " transactions to " + fileName + "." + RESET);
+        } catch (Exception e) {
+            System.out.println(RED + "Error exporting to " + fileName + ". " + e + RESET);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Edit and delete
+       ------------------------------------------------------------------ */
+
+    /**
+     * List the transactions of one day with their ids, then edit or delete the one picked.
+     * The change is appended to the edit log, transactions.csv is rewritten later by compaction.
+     *
+     * @param scanner used for user input
+     */
+    private static void editTransaction(Scanner scanner) {
+        if (!loadAll()) {
+            return;
+        }
+        LocalDate date = promptOptionalDate(scanner, "Date of the transaction 'yyyy-MM-dd' (empty to go back): ");
+        if (date == null) {
+            return;
+        }
+        try {
+            DateIndex.View view = book.getDateIndex().view();
+            int day = (int) date.toEpochDay();
+            LedgerRenderer.RowSource rows = view.newestFirst(view.lowerBound(day), view.upperBound(day));
+            if (rows.size() == 0) {
+                System.out.println(RED + "No transactions on " + date + "." + RESET);
+                return;
+            }
+            System.out.println(String.format("%-6s", "Id") + firstLine);
+            for (int position = 0; position < rows.size(); position++) {
+                int row = rows.rowAt(position);
+                System.out.println(String.format("%-6d", book.getId(row)) + ledger.get(row));
+            }
+
+            System.out.print("Id of the transaction (empty to go back): ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return;
+            }
+            int id = Integer.parseInt(input);
+            int row = book.findRow(id);
+            if (row < 0) {
+                System.out.println(RED + "No transaction with id " + id + "." + RESET);
+                return;
+            }
+            System.out.println(YELLOW + "E) Edit  D) Delete  Q) Cancel" + RESET);
+            switch (scanner.nextLine().trim().toUpperCase()) {
+                case "E" -> {
+                    Transaction transaction = ledger.get(row);
+                    long cents = promptChanges(scanner, transaction, ledger.getCents(row));
+                    int updated = book.update(id, transaction.getDate(), transaction.getTime(),
+                            transaction.getDescription(), transaction.getVendor(), cents);
+                    System.out.println(GREEN + "Successfully updated transaction " + id + ": \n"
+                            + ledger.toCsvLine(updated) + RESET);
+                }
+                case "D" -> {
+                    book.delete(id);
+                    System.out.println(GREEN + "Successfully deleted transaction " + id + "." + RESET);
+                }
+                default -> {
+                    return;
+                }
+            }
+            if (book.getCompactionFailure() != null) {
+                System.out.println(RED + "Error compacting " + FILE_NAME + ". " + book.getCompactionFailure() + RESET);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println(RED + "Invalid entry. Please enter the id shown in the first column." + RESET);
+        } catch (Exception e) {
+            System.out.println(RED + "Error saving the change. " + e + RESET);
+        }
+    }
+
+    /**
+     * Prompt for each field of a transaction with its current value, an empty entry keeps it.
+     * Loops for re-enter on an entry that is unable to parse.
+     *
+     * @param scanner     used for user input
+     * @param transaction changed through its setters, except the amount
+     * @param cents       current amount
+     * @return the amount in cents, kept exact rather than going through the transaction's double
+     */
+    private static long promptChanges(Scanner scanner, Transaction transaction, long cents) {
+        System.out.println("Leave a field empty to keep its value.");
+        while (true) {
+            System.out.print("Date [" + transaction.getDate().format(DATE_FMT) + "]: ");
+            String input = scanner.nextLine().trim();
+            LocalDate date = parseDate(input);
+            if (input.isEmpty() || date != null) {
+                if (date != null) {
+                    transaction.setDate(date);
+                }
+                break;
+            }
+            System.out.println(RED + "Invalid entry. Please use the format yyyy-MM-dd." + RESET);
+        }
+        while (true) {
+            System.out.print("Time [" + transaction.getTime().format(TIME_FMT) + "]: ");
+            String input = scanner.nextLine().trim();
+            LocalTime time = parseTime(input);
+            if (input.isEmpty() || time != null) {
+                if (time != null) {
+                    transaction.setTime(time);
+                }
+                break;
+            }
+            System.out.println(RED + "Invalid entry. Please use the format HH:mm:ss." + RESET);
+        }
+        while (true) {
+            System.out.print("Description [" + transaction.getDescription() + "]: ");
+            String description = scanner.nextLine().trim();
+            if (Ledger.fitsLine(description)) {
+                if (!description.isEmpty()) {
+                    transaction.setDescription(description);
+                }
+                break;
+            }
+            System.out.println(RED + "Invalid entry. The description can not contain '|'." + RESET);
+        }
+        while (true) {
+            System.out.print("Vendor [" + transaction.getVendor() + "]: ");
+            String vendor = scanner.nextLine().trim();
+            if (Ledger.fitsLine(vendor)) {
+                if (!vendor.isEmpty()) {
+                    transaction.setVendor(vendor);
+                }
+                break;
+            }
+            System.out.println(RED + "Invalid entry. The vendor can not contain '|'." + RESET);
+        }
+        while (true) {
+            System.out.print("Amount [" + money(cents) + "]: ");
+            String input = scanner.nextLine().trim();
+            Long entered = parseCents(input);
+            if (input.isEmpty() || entered != null) {
+                return entered != null ? entered : cents;
+            }
+            System.out.println(RED + "Invalid entry. Please enter a number, negative for a payment." + RESET);
+        }
+    }
+
     /* ------------------------------------------------------------------
        Reports menu
        ------------------------------------------------------------------ */
     private static void reportsMenu(Scanner scanner) {
         boolean running = true;
         LocalDate currentDate = LocalDate.now();
-        LocalDate startDate, endDate;
 
         while (running) {
             System.out.println(BLUE2 + " = Reports = " + RESET);
@@ -363,82 +788,157 @@ public class FinancialTracker {
             System.out.println(BLUE2 + "4) Previous Year" + RESET);
             System.out.println(BLUE2 + "5) Search by Vendor" + RESET);
             System.out.println(BLUE2 + "6) Custom Search" + RESET);
+            System.out.println(BLUE2 + "7) Analytics" + RESET);
             System.out.println(GREEN + "0) Back" + RESET);
 
             String input = scanner.nextLine().trim();
 
 
             switch (input) {
-                case "1" -> {
-                    System.out.println("Month To Date Report:");
-                    startDate = currentDate.withDayOfMonth(1);
-                    endDate = currentDate;
-
-                    filterTransactionsByDate(startDate, endDate);
-
-                }
-                case "2" -> {
-                    System.out.println("Previous Month Report:");
-                    LocalDate previousMonthDate = currentDate.minusMonths(1);
-
-                    startDate = previousMonthDate.withDayOfMonth(1);
-                    endDate = previousMonthDate.with(TemporalAdjusters.lastDayOfMonth());
-
-                    filterTransactionsByDate(startDate, endDate);
-                }
-                case "3" -> {
-                    System.out.println("Year To Date Report:");
-                    startDate = currentDate.withDayOfYear(1);
-                    endDate = currentDate;
-
-                    filterTransactionsByDate(startDate, endDate);
-
-                }
-                case "4" -> {
-                    System.out.println("Previous Year Report:");
-                    LocalDate previousYearDate = currentDate.minusYears(1);
-
-                    startDate = previousYearDate.withDayOfYear(1);
-                    endDate = previousYearDate.with(TemporalAdjusters.lastDayOfYear());
-
-                    filterTransactionsByDate(startDate, endDate);
-                }
+                case "1" -> periodReport(scanner, ReportPeriod.MONTH_TO_DATE, currentDate);
+                case "2" -> periodReport(scanner, ReportPeriod.PREVIOUS_MONTH, currentDate);
+                case "3" -> periodReport(scanner, ReportPeriod.YEAR_TO_DATE, currentDate);
+                case "4" -> periodReport(scanner, ReportPeriod.PREVIOUS_YEAR, currentDate);
                 case "5" -> {
                     System.out.print("Please enter the vendor: ");
                     input = scanner.nextLine().trim();
-                    filterTransactionsByVendor(input);
+                    filterTransactionsByVendor(scanner, input);
                 }
                 case "6" -> customSearch(scanner);
+                case "7" -> analyticsMenu(scanner);
                 case "0" -> running = false;
                 default -> System.out.println("Invalid option");
             }
         }
     }
 
+    /**
+     * Spend per vendor, top vendors, monthly income and spend, and the largest transactions of a date range.
+     * Each one is a parallel pass over the rows in the range.
+     *
+     * @param scanner used for user input
+     */
+    private static void analyticsMenu(Scanner scanner) {
+        if (!loadAll()) {
+            return;
+        }
+        boolean running = true;
+        while (running) {
+            System.out.println(BLUE2 + " = Analytics = " + RESET);
+            System.out.println(BLUE2 + "Choose an option:" + RESET);
+            System.out.println(BLUE2 + "1) Spend by Vendor" + RESET);
+            System.out.println(BLUE2 + "2) Top Vendors" + RESET);
+            System.out.println(BLUE2 + "3) Monthly Income vs Spend" + RESET);
+            System.out.println(BLUE2 + "4) Largest Transactions" + RESET);
+            System.out.println(GREEN + "0) Back" + RESET);
+
+            String input = scanner.nextLine().trim();
+            if (input.equals("0")) {
+                running = false;
+                continue;
+            }
+            if (!input.matches("[1-4]")) {
+                System.out.println("Invalid option");
+                continue;
+            }
+            System.out.println("Leave a date empty for no limit.");
+            LocalDate start = promptOptionalDate(scanner, "Start date 'yyyy-MM-dd': ");
+            LocalDate end = promptOptionalDate(scanner, "End date 'yyyy-MM-dd': ");
+            try {
+                switch (input) {
+                    case "1" -> printVendorSpend(book.getAnalytics().vendorSpend(start, end));
+                    case "2" -> printVendorSpend(book.getAnalytics().topVendors(start, end, promptCount(scanner)));
+                    case "3" -> printMonthlyFlow(book.getAnalytics().monthlyFlow(start, end));
+                    case "4" -> {
+                        int[] rows = book.getAnalytics().largestTransactions(start, end, promptCount(scanner));
+                        System.out.println(firstLine);
+                        showRows(scanner, LedgerRenderer.RowSource.of(rows));
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println(RED + "Error running analytics. " + e + RESET);
+            }
+        }
+    }
+
+    /// how many entries a top list shows, 10 when left empty.
+    private static int promptCount(Scanner scanner) {
+        while (true) {
+            System.out.print("How many (default 10): ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return 10;
+            }
+            try {
+                int count = Integer.parseInt(input);
+                if (count > 0) {
+                    return count;
+                }
+            } catch (NumberFormatException e) {
+                /// asked again below.
+            }
+            System.out.println(RED + "Invalid entry. Please enter a positive number." + RESET);
+        }
+    }
+
+    private static void printVendorSpend(LedgerAnalytics.VendorSpend spend) {
+        if (spend.size() == 0) {
+            System.out.println("No transactions in this range.");
+            return;
+        }
+        System.out.println(String.format("%-30s|%14s|%14s|%s", "Vendor", "Spend", "Deposits", "Count"));
+        for (int i = 0; i < spend.size(); i++) {
+            System.out.println(String.format("%-30s|%14s|%14s|%d", spend.getVendor(i), money(spend.getOutflowCents(i)),
+                    money(spend.getInflowCents(i)), spend.getCount(i)));
+        }
+    }
+
+    private static void printMonthlyFlow(LedgerAnalytics.MonthlyFlow flow) {
+        if (flow == null) {
+            System.out.println("No transactions in this range.");
+            return;
+        }
+        System.out.println(String.format("%-8s|%14s|%14s|%s", "Month", "Income", "Spend", "Net"));
+        for (int i = 0; i < flow.size(); i++) {
+            long net = flow.getNetCents(i);
+            System.out.println(String.format("%-8s|%14s|%14s|", flow.getMonth(i), money(flow.getIncomeCents(i)),
+                    money(flow.getSpendCents(i))) + (net < 0 ? RED : GREEN) + money(net) + RESET);
+        }
+    }
+
     /* ------------------------------------------------------------------
        Reporting helpers
        ------------------------------------------------------------------ */
 
+    private static void periodReport(Scanner scanner, ReportPeriod period, LocalDate currentDate) {
+        System.out.println(period.getLabel() + " Report:");
+        filterTransactionsByDate(scanner, period.getLabel(), period.start(currentDate), period.end(currentDate));
+    }
+
     /**
-     * Filter Transactions by dates.
+     * Filter Transactions by dates, only the rows inside the range are visited.
+     * The rows and totals of a report are cached, so showing the same report again costs nothing
+     * unless a transaction was added inside its range.
      *
-     * @param start a predefined start date based on the current date.
-     * @param end   a predefined start date based on the current date.
+     * @param scanner used for paging.
+     * @param type    report name, e.g. "Year To Date".
+     * @param start   a predefined start date based on the current date.
+     * @param end     a predefined start date based on the current date.
      */
-    private static void filterTransactionsByDate(LocalDate start, LocalDate end) {
+    private static void filterTransactionsByDate(Scanner scanner, String type, LocalDate start, LocalDate end) {
 
         try {
             System.out.println("start date: " + start);
             System.out.println("end date: " + end);
 
             System.out.println(firstLine);
-            for (Transaction transaction : transactions) {
-                LocalDate date = transaction.getDate();
-                if ((date.isAfter(start) || date.isEqual(start)) && (date.isBefore(end) || date.isEqual(end))) {
+            /// binary search the first and last position of the range, then print newest first.
+            ReportCache.Report report = book.report(type, start, end);
+            showRows(scanner, report.getRows());
 
-                    System.out.println(transaction);
-                }
-            }
+            /// totals come from the rollup tables, not from another pass over the rows.
+            printTotals("Period total", report.getTotals());
+            System.out.println(YELLOW + "Balance at " + end + ": $" + money(report.getBalanceCents()) + RESET);
         } catch (Exception e) {
             System.out.println(RED + "Error displaying report." + e + RESET);
         }
@@ -446,26 +946,37 @@ public class FinancialTracker {
     }
 
     /**
-     * Iterate transactions, print transactions with matching vendor.
+     * Look up the vendor in the vendor index, print transactions with matching vendor newest first.
+     * When nothing matches, vendors starting with the input are suggested.
      *
-     * @param vendor string input from user.
+     * @param scanner used for paging.
+     * @param vendor  string input from user.
      */
-    private static void filterTransactionsByVendor(String vendor) {
+    private static void filterTransactionsByVendor(Scanner scanner, String vendor) {
+        if (!loadAll()) {
+            return;
+        }
         try {
             System.out.println(firstLine);
-            boolean found = false;
-
-            for (Transaction transaction : transactions) {
-                String theVendor = transaction.getVendor();
 
-                if (theVendor.equalsIgnoreCase(vendor)) {
-                    System.out.println(transaction);
-                    found = true;
-                }
+            long started = Metrics.start();
+            int[] rows = vendorIndex.find(vendor);
+            ledger.sortNewestFirst(rows);
+            Metrics.query(started, rows.length, rows.length);
+            showRows(scanner, LedgerRenderer.RowSource.of(rows));
 
-            }
-            if (!found) {
+            if (rows.length > 0) {
+                printTotals("Vendor total", aggregates.vendor(vendor));
+            } else {
                 System.out.println("Did not find any transaction under vendor: " + vendor);
+
+                List<VendorIndex.Entry> suggestions = vendorIndex.findByPrefix(vendor, 10);
+                if (!suggestions.isEmpty()) {
+                    System.out.println(YELLOW + "Vendors starting with \"" + vendor + "\":" + RESET);
+                    for (VendorIndex.Entry entry : suggestions) {
+                        System.out.println(YELLOW + "  " + entry.getName() + " (" + entry.getRowCount() + ")" + RESET);
+                    }
+                }
             }
 
         } catch (Exception e) {
@@ -473,12 +984,51 @@ public class FinancialTracker {
         }
     }
 
+    /**
+     * Prompt for any combination of date range, description, vendor and amount, leaving a field empty skips it.
+     * Matches are printed newest first followed by how many rows the query engine had to scan.
+     *
+     * @param scanner used for user input
+     */
     private static void customSearch(Scanner scanner) {
-        // TODO – prompt for any combination of date range, description,
-        //        vendor, and exact amount, then display matches
-        System.out.println(YELLOW + "This feature is still underdevelopment. " + RESET);
-        System.out.println(YELLOW + "Returning to the Reports screen..." + RESET);
+        if (!loadAll()) {
+            return;
+        }
+        TransactionQuery query = new TransactionQuery();
+        System.out.println("Leave a field empty to skip it.");
+
+        query.setStartDate(promptOptionalDate(scanner, "Start date 'yyyy-MM-dd': "));
+        query.setEndDate(promptOptionalDate(scanner, "End date 'yyyy-MM-dd': "));
+
+        System.out.print("Description contains: ");
+        query.setDescription(scanner.nextLine().trim());
+        System.out.print("Vendor: ");
+        query.setVendor(scanner.nextLine().trim());
+
+        /// amount is either one exact value or a "min..max" range with either side optional.
+        while (true) {
+            System.out.print("Amount (exact, or range 'min..max'): ");
+            String amountInput = scanner.nextLine().trim();
+            if (amountInput.isEmpty() || query.setAmount(amountInput)) {
+                break;
+            }
+            System.out.println(RED + "Invalid amount. Please enter a number or a range like 10..50." + RESET);
+        }
+
+        try {
+            QueryEngine.Result result = queryEngine.execute(query);
 
+            System.out.println(firstLine);
+            showRows(scanner, LedgerRenderer.RowSource.of(result.getRows()));
+            if (result.getMatched() == 0) {
+                System.out.println("No transactions matched your search.");
+            }
+            System.out.println(YELLOW + "Matched " + result.getMatched() + " of " + result.getScanned()
+                    + " rows scanned using " + result.getAccessPath() + "." + RESET);
+
+        } catch (Exception e) {
+            System.out.println(RED + "Error running search." + e + RESET);
+        }
     }
 
     /* ------------------------------------------------------------------
@@ -531,19 +1081,41 @@ public class FinancialTracker {
     }
 
     /**
-     * Parses a string to a Double, rounding to the nearest two decimal places.
+     * Parses a string to whole cents, rounding to the nearest two decimal places.
      *
      * @param s The string input.
-     * @return The rounded number, or null if parsing fails.
+     * @return The amount in cents, or null if parsing fails.
      */
-    private static Double parseDouble(String s) {
+    private static Long parseCents(String s) {
         try {
-            return Math.round(Double.parseDouble(s) * 100.0) / 100.0;
+            return MoneyCodec.parseCents(s.trim());
         } catch (Exception e) {
             return null;
         }
     }
 
+    /**
+     * Prompt user for a date that may be left empty, loops for re-enter if the date is unable to parse.
+     *
+     * @param scanner used for user input
+     * @param prompt  text shown before the input
+     * @return a pares LocalDate or null when left empty
+     */
+    private static LocalDate promptOptionalDate(Scanner scanner, String prompt) {
+        while (true) {
+            System.out.print(prompt);
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return null;
+            }
+            LocalDate date = parseDate(input);
+            if (date != null) {
+                return date;
+            }
+            System.out.println(RED + "Invalid entry. Please use the format yyyy-MM-dd." + RESET);
+        }
+    }
+
     /**
      * Prompt user for a date and time String input and return with a pares LocalDateTime.
      * Loops for re-enter if string input unable to parse into LocalDAteTime.
@@ -0,0 +1,102 @@
+package com.pluralsight;
+
+/**
+ * Open addressing multiset of 64-bit fingerprints in two flat arrays, about 12 bytes per entry
+ * plus free slots, with no boxing and no per-entry objects.
+ * Each fingerprint carries a count, so a ledger holding the same transaction twice matches two
+ * imported copies of it, not one.
+ */
+public class FingerprintSet {
+
+    private static final float MAX_LOAD = 0.6f;
+
+    /// 0 marks a free slot, so the fingerprint 0 is counted on its own.
+    private long[] keys;
+    private int[] counts;
+    private int used;
+    private int zeroCount;
+
+    public FingerprintSet(int expected) {
+        /// smallest power of two that holds the expected entries under the load limit.
+        long wanted = Math.max(16, (long) (expected / MAX_LOAD) + 1);
+        int capacity = Integer.highestOneBit((int) Math.min(1 << 30, wanted - 1)) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Add one occurrence of the fingerprint.
+     */
+    public void add(long fingerprint) {
+        if (fingerprint == 0) {
+            zeroCount++;
+            return;
+        }
+        int slot = slot(fingerprint);
+        if (keys[slot] == 0) {
+            keys[slot] = fingerprint;
+            if (++used > keys.length * MAX_LOAD) {
+                grow();
+                slot = slot(fingerprint);
+            }
+        }
+        counts[slot]++;
+    }
+
+    /**
+     * Take away one occurrence of the fingerprint.
+     *
+     * @return false if there was none left.
+     */
+    public boolean remove(long fingerprint) {
+        if (fingerprint == 0) {
+            if (zeroCount == 0) {
+                return false;
+            }
+            zeroCount--;
+            return true;
+        }
+        int slot = slot(fingerprint);
+        if (keys[slot] == 0 || counts[slot] == 0) {
+            return false;
+        }
+        /// the key stays in its slot with a zero count, so probe chains through it are not broken.
+        counts[slot]--;
+        return true;
+    }
+
+    /**
+     * Number of occurrences of the fingerprint.
+     */
+    public int count(long fingerprint) {
+        if (fingerprint == 0) {
+            return zeroCount;
+        }
+        int slot = slot(fingerprint);
+        return keys[slot] == 0 ? 0 : counts[slot];
+    }
+
+    /// linear probe from the fingerprint's home slot to its own slot or the first free one.
+    private int slot(long fingerprint) {
+        int mask = keys.length - 1;
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (keys[slot] != 0 && keys[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used for row number lists so index entries are not boxed.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size);
+        }
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + size);
+        }
+        values[index] = value;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Remove value from a list kept in ascending order, e.g. a row list of an index.
+     *
+     * @return false if the value is not in the list.
+     */
+    public boolean removeSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
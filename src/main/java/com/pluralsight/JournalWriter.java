@@ -0,0 +1,312 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only writer for the transactions file that stays open for the life of the process.
+ * Appended lines are buffered and written by one committer thread, which takes everything pending
+ * in a single write (group commit). When the data is forced to disk depends on the SyncPolicy.
+ */
+public class JournalWriter implements Closeable {
+
+    /**
+     * Durability contract of append.
+     */
+    public enum SyncPolicy {
+        /// append returns once its line is written and forced to disk, concurrent appends share one fsync.
+        PER_RECORD,
+        /// append returns at once, pending lines are written and forced every window, at most one window is lost.
+        TIME_WINDOW,
+        /// append returns at once, pending lines are written every window and forced only on close.
+        ON_SHUTDOWN;
+
+        /**
+         * Parse "per-record", "window" or "shutdown", anything else falls back to PER_RECORD.
+         */
+        public static SyncPolicy parse(String value) {
+            if (value == null) {
+                return PER_RECORD;
+            }
+            return switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "window", "time-window" -> TIME_WINDOW;
+                case "shutdown", "on-shutdown" -> ON_SHUTDOWN;
+                default -> PER_RECORD;
+            };
+        }
+    }
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final long windowMillis;
+    private final Thread committer;
+
+    private final Object lock = new Object();
+    /// lines waiting for the committer, swapped with the spare buffer on every commit.
+    private byte[] pending = new byte[64 * 1024];
+    private byte[] spare = new byte[64 * 1024];
+    private int pendingLength;
+    private long appendedCount;
+    private long syncedCount;
+    private long commitCount;
+    /// bytes written to the file so far, the line break added to a file that lacked one included.
+    private long bytesWritten;
+    /// threads blocked in sync(), the committer forces the next batch even under ON_SHUTDOWN.
+    private int waiters;
+    private IOException failure;
+    private boolean closing;
+
+    /**
+     * Open the journal in append mode and start the committer thread.
+     *
+     * @param path         transactions file, created if missing.
+     * @param policy       when appended lines are forced to disk.
+     * @param windowMillis commit interval for TIME_WINDOW and ON_SHUTDOWN.
+     */
+    public JournalWriter(Path path, SyncPolicy policy, long windowMillis) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.policy = policy;
+        this.windowMillis = Math.max(1, windowMillis);
+
+        /// a file whose last line has no line break would otherwise get the next record glued on.
+        long size = channel.size();
+        if (size > 0) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+                reader.read(last, size - 1);
+            }
+            if (last.get(0) != '\n') {
+                bytesWritten += channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            }
+        }
+
+        committer = new Thread(this::runCommitter, "journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    public SyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Bytes this journal has written to the file, lines still queued not included. Complete once closed.
+     */
+    long getBytesWritten() {
+        synchronized (lock) {
+            return bytesWritten;
+        }
+    }
+
+    /**
+     * Append one line, a line break is added.
+     * With PER_RECORD this blocks until the line is on disk.
+     */
+    public void append(String line) throws IOException {
+        appendAll(List.of(line));
+    }
+
+    /**
+     * Append several lines as one batch, with PER_RECORD this blocks until the whole batch is on disk.
+     */
+    public void appendAll(List<String> lines) throws IOException {
+        long ticket = enqueue(lines);
+        if (policy == SyncPolicy.PER_RECORD) {
+            awaitSynced(ticket);
+        }
+    }
+
+    /**
+     * Queue lines for the committer without waiting, for callers that order appends under their own lock
+     * and wait for the disk outside it with awaitDurable.
+     *
+     * @return ticket to pass to awaitDurable.
+     */
+    long enqueue(List<String> lines) throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                ensurePending(bytes.length + 1);
+                System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+                pendingLength += bytes.length;
+                pending[pendingLength++] = '\n';
+            }
+            appendedCount += lines.size();
+            lock.notifyAll();
+            return appendedCount;
+        }
+    }
+
+    /**
+     * Wait until the lines of an enqueue ticket are on disk if the policy asks for that, as appendAll does.
+     */
+    void awaitDurable(long ticket) throws IOException {
+        if (policy == SyncPolicy.PER_RECORD) {
+            awaitSynced(ticket);
+        }
+    }
+
+    /**
+     * Block until everything appended so far is written and forced to disk, whatever the policy.
+     */
+    public void sync() throws IOException {
+        long ticket;
+        synchronized (lock) {
+            checkOpen();
+            ticket = appendedCount;
+            lock.notifyAll();
+        }
+        awaitSynced(ticket);
+    }
+
+    /**
+     * Number of commits (one write, possibly one fsync) done so far.
+     */
+    public long getCommitCount() {
+        synchronized (lock) {
+            return commitCount;
+        }
+    }
+
+    /**
+     * Write and force everything pending, stop the committer and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Committer
+       ------------------------------------------------------------------ */
+
+    private void runCommitter() {
+        while (true) {
+            byte[] batch;
+            int length;
+            long batchEnd;
+            boolean last;
+            boolean forced;
+            synchronized (lock) {
+                try {
+                    if (policy != SyncPolicy.PER_RECORD) {
+                        /// let a window of appends pile up before writing them, unless someone waits in sync().
+                        long deadline = System.nanoTime() + windowMillis * 1_000_000L;
+                        long remaining;
+                        while (!closing && waiters == 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                            lock.wait(Math.max(1, remaining / 1_000_000L));
+                        }
+                    }
+                    while (pendingLength == 0 && !closing && !(waiters > 0 && syncedCount < appendedCount)) {
+                        lock.wait(policy == SyncPolicy.PER_RECORD ? 0 : windowMillis);
+                    }
+                } catch (InterruptedException e) {
+                    closing = true;
+                }
+                batch = pending;
+                length = pendingLength;
+                batchEnd = appendedCount;
+                pending = spare;
+                pendingLength = 0;
+                spare = batch;
+                last = closing;
+                forced = policy != SyncPolicy.ON_SHUTDOWN || last || waiters > 0;
+            }
+
+            IOException error = null;
+            ByteBuffer buffer = ByteBuffer.wrap(batch, 0, length);
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (forced) {
+                    channel.force(false);
+                }
+                Metrics.journalCommit(forced);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            synchronized (lock) {
+                bytesWritten += buffer.position();
+                if (error != null && failure == null) {
+                    failure = error;
+                }
+                if (forced) {
+                    syncedCount = batchEnd;
+                }
+                commitCount++;
+                lock.notifyAll();
+                if (last || failure != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void awaitSynced(long ticket) throws IOException {
+        synchronized (lock) {
+            waiters++;
+            try {
+                lock.notifyAll();
+                while (syncedCount < ticket && failure == null && committer.isAlive()) {
+                    lock.wait(windowMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for journal sync");
+            } finally {
+                waiters--;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closing) {
+            throw new IOException("journal is closed");
+        }
+    }
+
+    private void ensurePending(int extra) {
+        if (pendingLength + extra > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pendingLength + extra, pending.length * 2));
+        }
+    }
+}
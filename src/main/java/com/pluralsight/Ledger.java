@@ -0,0 +1,1372 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.CRC32;
+
+/**
+ * One transactions file with everything built on top of it: the column store, the date, vendor and
+ * description indexes, the rollups and the query engine, plus the journal that appends new rows to the file and
+ * the snapshot saved next to it on close.
+ * The interactive menu and the batch commands both work through this class, so loading, appending
+ * and shutdown behave the same either way.
+ * <p>
+ * Appends and close are serialized, so rows reach the store and the journal in the same order.
+ * Reads need no lock: reports and queries can run on other threads while rows are being added.
+ * <p>
+ * When a directory named after the file (transactions/ for transactions.csv) holds a PartitionManifest,
+ * the ledger is partitioned by month instead: every row is journaled to the segment of its month, a load
+ * can be limited to the months of a date range, and no snapshot is kept.
+ * <p>
+ * In lazy mode (loadLazy) the file is memory-mapped instead of loaded: getRows and getDateIndex serve rows
+ * decoded from the mapping and totals are summed from the rows in range. Vendor lookups, the query engine
+ * and imports need the column store, call loadAll before using them.
+ * <p>
+ * With startTail the ledger follows the transactions file while other programs append to it: each tail call
+ * reads only the complete lines added since the last one, skipping the lines this ledger wrote itself.
+ * Other programs should write whole lines at a time, as the journal does, or their lines and ours can mix.
+ * <p>
+ * Date range reports are kept in a ReportCache, sized with -Dtracker.reportCache.entries (default 32, 0 turns it
+ * off) and -Dtracker.reportCache.rows (default 1000000). Appends update it, loads clear it.
+ * <p>
+ * Rows are edited and deleted by their TransactionIds id. A change is one record appended to the EditLog next to
+ * the file (transactions.edits) and replayed after every load; in memory the old row is deleted and an edit
+ * appends the new version. Once -Dtracker.compact.threshold rows (default 10000, 0 for never) are dead that way,
+ * a background compaction rewrites the file without them and empties the log. A partitioned ledger can not be
+ * edited, and one with edits is never loaded lazily.
+ */
+public class Ledger implements Closeable {
+
+    /// rows per journal batch when appending many rows, bounds the memory held by one group commit.
+    private static final int BATCH_LINES = 64 * 1024;
+    /// start of the file compared when it is replaced while being followed, to tell a copy from a new file.
+    private static final int HEAD_BYTES = 4096;
+
+    /**
+     * What a load found: the CSV result for the part that was parsed, and the snapshot rows used before it.
+     */
+    public static class LoadReport {
+        private final CsvLoader.Result csvResult;
+        private final int snapshotRows;
+        private final String snapshotProblem;
+        private final List<String> editErrors;
+
+        LoadReport(CsvLoader.Result csvResult, int snapshotRows, String snapshotProblem, List<String> editErrors) {
+            this.csvResult = csvResult;
+            this.snapshotRows = snapshotRows;
+            this.snapshotProblem = snapshotProblem;
+            this.editErrors = editErrors;
+        }
+
+        public CsvLoader.Result getCsvResult() {
+            return csvResult;
+        }
+
+        public int getSnapshotRows() {
+            return snapshotRows;
+        }
+
+        /**
+         * Why an existing snapshot was ignored, or null when it was used or there was none.
+         */
+        public String getSnapshotProblem() {
+            return snapshotProblem;
+        }
+
+        /**
+         * Edit log records that could not be read or no longer match their row, and were skipped.
+         */
+        public List<String> getEditErrors() {
+            return editErrors;
+        }
+    }
+
+    /**
+     * What one tail call found: rows added by other programs, lines rejected, and whether the file was
+     * replaced or cut short.
+     */
+    public static class TailReport {
+        private final int rows;
+        private final List<String> errors;
+        private final String problem;
+        private final boolean stopped;
+
+        TailReport(int rows, List<String> errors, String problem, boolean stopped) {
+            this.rows = rows;
+            this.errors = errors;
+            this.problem = problem;
+            this.stopped = stopped;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        /**
+         * What happened to the file, or null when it just grew.
+         */
+        public String getProblem() {
+            return problem;
+        }
+
+        /**
+         * Whether following the file has stopped, later tail calls do nothing.
+         */
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        public boolean isEmpty() {
+            return rows == 0 && errors.isEmpty() && problem == null;
+        }
+    }
+
+    private final Path csv;
+    private final Path snapshot;
+    private final Path partitionDir;
+    private final Path edits;
+    private final Path idsFile;
+    private final LedgerStore store = new LedgerStore();
+    private final DateIndex dateIndex = new DateIndex(store);
+    private final VendorIndex vendorIndex = new VendorIndex(store);
+    private final DescriptionIndex descriptionIndex = new DescriptionIndex(store);
+    private final LedgerAggregates aggregates = new LedgerAggregates(store);
+    private final QueryEngine queryEngine = new QueryEngine(store, dateIndex, vendorIndex, descriptionIndex);
+    private final LedgerAnalytics analytics = new LedgerAnalytics(store, dateIndex);
+    private final ReportCache reports = new ReportCache(Integer.getInteger("tracker.reportCache.entries", 32),
+            Long.getLong("tracker.reportCache.rows", 1_000_000L));
+    private JournalWriter journal;
+    /// lines of the transactions file that are in the store, recorded in the snapshot.
+    private long csvLines;
+    /// bytes and lines of the transactions file the last load read, where following it starts.
+    private long loadedOffset;
+    private long loadedLines;
+    /// what the journal had written when the load read the file, its later bytes are the lines this ledger added.
+    private long loadedJournalBytes;
+    /// set by a complete load or range load, which happens once per Ledger.
+    private boolean loaded;
+    private boolean closed;
+
+    /// tail mode only: the file followed, kept open across a rename, how far it has been read, and the lines this
+    /// ledger wrote that have not been read back yet.
+    private boolean tailing;
+    private FileChannel tailChannel;
+    private Object tailKey;
+    private long tailOffset;
+    private long tailLines;
+    private int headLength;
+    private long headChecksum;
+    private ArrayDeque<String> ownLines;
+    /// the store no longer matches the file, e.g. after a rotation, so no snapshot may be written for it.
+    private boolean snapshotStale;
+
+    /// partitioned layout only: the manifest, the segments loaded or appended to, and one journal per segment.
+    private PartitionManifest manifest;
+    private final Set<PartitionManifest.Segment> counted = new HashSet<>();
+    private final Set<PartitionManifest.Segment> appended = new HashSet<>();
+    private final Map<YearMonth, JournalWriter> segmentJournals = new LinkedHashMap<>();
+    private JournalWriter.SyncPolicy journalPolicy;
+    private long journalWindowMillis;
+    /// net of the months before the loaded range, taken from the manifest.
+    private long priorNetCents;
+
+    /// single file only: ids of the rows and the journal of the edit log, opened by the first edit.
+    private TransactionIds ids;
+    private JournalWriter editJournal;
+    /// taken before the ledger lock by edits and compaction, so edits wait while the file is rewritten.
+    private final Object editLock = new Object();
+    private final int compactThreshold = Integer.getInteger("tracker.compact.threshold", 10_000);
+    /// records in the edit log, each one makes a row of the file or of the log out of date; and the background compaction.
+    private int deadRecords;
+    private Thread compactor;
+    private volatile Exception compactionFailure;
+
+    /// lazy mode only: the mapped file and its date index, null once everything is loaded.
+    private volatile MappedLedger mapped;
+    private volatile DateIndex mappedDates;
+
+    /**
+     * @param csv transactions file, the snapshot, edit log and ids are kept next to it with the extensions ".snap",
+     *            ".edits" and ".ids".
+     */
+    public Ledger(Path csv) {
+        this.csv = csv;
+        String name = csv.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        this.snapshot = csv.toAbsolutePath().resolveSibling(stem + ".snap");
+        this.partitionDir = csv.toAbsolutePath().resolveSibling(stem);
+        this.edits = csv.toAbsolutePath().resolveSibling(stem + ".edits");
+        this.idsFile = csv.toAbsolutePath().resolveSibling(stem + ".ids");
+    }
+
+    /**
+     * Whether the ledger lives in month segments next to the transactions file rather than in the file itself.
+     */
+    public boolean isPartitioned() {
+        return manifest != null || PartitionManifest.exists(partitionDir);
+    }
+
+    /**
+     * Split the transactions file into month segments, then rename it to "transactions.csv.migrated" and drop
+     * its snapshot. Call before load, the next load reads the segments.
+     *
+     * @return the load result of the transactions file.
+     * @throws IOException if the file can not be read, has edits that were not compacted into it yet or the ledger
+     *                     is already partitioned.
+     */
+    public CsvLoader.Result migrate() throws IOException {
+        if (hasEdits()) {
+            throw new IOException(edits + " holds edits of " + csv + ", compact it before migrating");
+        }
+        CsvLoader.Result result = PartitionManifest.migrate(csv, partitionDir);
+        Files.deleteIfExists(idsFile);
+        Files.move(csv, csv.resolveSibling(csv.getFileName() + ".migrated"));
+        Files.deleteIfExists(snapshot);
+        return result;
+    }
+
+    /**
+     * Restore the snapshot if it still matches the file, then parse the lines after it, replay the edit log and
+     * bring the indexes and rollups up to date. Bad lines and edits are skipped and listed in the report.
+     *
+     * @throws IOException           if the transactions file can not be read.
+     * @throws IllegalStateException if the ledger was loaded before.
+     */
+    public LoadReport load() throws IOException {
+        if (isPartitioned()) {
+            return load(null, null);
+        }
+        checkNotLoaded();
+        long started = Metrics.start();
+        reports.clear();
+        finishCompaction();
+        LedgerSnapshot.Position position = new LedgerSnapshot.Position(0, 0);
+        String snapshotProblem = null;
+        if (snapshotEnabled() && Files.exists(snapshot)) {
+            try {
+                position = LedgerSnapshot.read(snapshot, csv, store);
+            } catch (Exception e) {
+                snapshotProblem = e.getMessage();
+            }
+        }
+        int snapshotRows = store.size();
+
+        CsvLoader.Result result = CsvLoader.load(csv, store, position.getCsvOffset(), position.getCsvLines());
+        csvLines = position.getCsvLines() + result.getLineCount();
+        loadedOffset = position.getCsvOffset() + result.getByteCount();
+        loadedLines = csvLines;
+        loadedJournalBytes = journal != null ? journal.getBytesWritten() : 0;
+        List<String> editErrors = replayEdits();
+        dateIndex.sync();
+        vendorIndex.sync();
+        descriptionIndex.sync();
+        aggregates.sync();
+        loaded = true;
+        Metrics.load(started, store.size(), result.getByteCount(), result.getErrors().size() + editErrors.size());
+        return new LoadReport(result, snapshotRows, snapshotProblem, editErrors);
+    }
+
+    /// the store and the rollups only grow, a second load would add every row and month again.
+    private void checkNotLoaded() {
+        if (loaded) {
+            throw new IllegalStateException("the ledger is already loaded, use a new Ledger to load again");
+        }
+    }
+
+    /// number the loaded rows and apply the edit log to them.
+    private List<String> replayEdits() throws IOException {
+        List<String> errors = new ArrayList<>();
+        String logName = edits.getFileName().toString();
+        ids = TransactionIds.identity();
+        try {
+            TransactionIds written = TransactionIds.read(idsFile);
+            if (written.describes(csv)) {
+                ids = written;
+            } else {
+                errors.add(idsFile.getFileName() + " does not belong to " + csv.getFileName()
+                        + " any more, transaction ids start from 1 again");
+            }
+        } catch (IOException e) {
+            errors.add(e.getMessage() + ", transaction ids start from 1 again");
+        }
+        ids.loaded(store.size());
+
+        EditLog.Result log = EditLog.read(edits);
+        for (String error : log.getErrors()) {
+            errors.add(logName + " " + error);
+        }
+        for (EditLog.Record record : log.getRecords()) {
+            int row = ids.rowOf(record.getId());
+            if (row < 0 || EditLog.checksum(store.toCsvLine(row)) != record.getChecksum()) {
+                errors.add(logName + " line " + record.getLine() + ": transaction " + record.getId()
+                        + (row < 0 ? " does not exist" : " does not match the edit"));
+                continue;
+            }
+            if (record.isDelete()) {
+                remove(row, record.getId());
+            } else {
+                replace(row, record.getId(), record.getEpochDay(), record.getSecondOfDay(), record.getDescription(),
+                        record.getVendor(), record.getCents());
+            }
+        }
+        deadRecords = log.getRecords().size() + log.getErrors().size();
+        return errors;
+    }
+
+    /**
+     * Load only the rows between two dates, for reports and searches over a range.
+     * A partitioned ledger reads just the segments of the months overlapping the range, so the store may hold
+     * rows a little outside it but none of the other months; balanceAsOf still covers the whole ledger.
+     * A single file is loaded whole.
+     *
+     * @param from first day, null for no lower bound.
+     * @param to   last day, null for no upper bound.
+     * @throws IllegalStateException if the ledger was loaded before, a Ledger loads one range once.
+     */
+    public LoadReport load(LocalDate from, LocalDate to) throws IOException {
+        if (!isPartitioned()) {
+            return load();
+        }
+        checkNotLoaded();
+        long started = Metrics.start();
+        reports.clear();
+        manifest = PartitionManifest.read(partitionDir);
+
+        boolean stale = false;
+        int rowCount = 0;
+        long lineCount = 0;
+        long byteCount = 0;
+        List<String> errors = new ArrayList<>();
+        /// earlier months only contribute their net to the balance, from the manifest unless it is out of date.
+        for (PartitionManifest.Segment segment : manifest.before(from)) {
+            if (!manifest.isCurrent(segment)) {
+                manifest.rescan(segment);
+                stale = true;
+            }
+            priorNetCents += segment.getNetCents();
+            counted.add(segment);
+        }
+        for (PartitionManifest.Segment segment : manifest.overlapping(from, to)) {
+            int firstRow = store.size();
+            Path file = manifest.file(segment);
+            if (Files.exists(file)) {
+                CsvLoader.Result result = CsvLoader.load(file, store);
+                for (String error : result.getErrors()) {
+                    errors.add(segment.getFileName() + " " + error);
+                }
+                rowCount += result.getRowCount();
+                lineCount += result.getLineCount();
+                byteCount += result.getByteCount();
+            }
+            stale |= !manifest.isCurrent(segment);
+            manifest.recount(segment, store, firstRow, store.size());
+            counted.add(segment);
+        }
+        if (stale) {
+            manifest.write();
+        }
+        dateIndex.sync();
+        vendorIndex.sync();
+        descriptionIndex.sync();
+        aggregates.sync();
+        loaded = true;
+        Metrics.load(started, rowCount, byteCount, errors.size());
+        return new LoadReport(new CsvLoader.Result(rowCount, errors, lineCount, byteCount), 0, null, List.of());
+    }
+
+    /**
+     * Map the transactions file and index where each row starts instead of loading the rows, so the ledger
+     * is ready in the time it takes to read the file once. A partitioned ledger, or one with edits that were not
+     * compacted into the file yet, is loaded as usual.
+     */
+    public synchronized LoadReport loadLazy() throws IOException {
+        if (isPartitioned() || hasEdits()) {
+            return load();
+        }
+        long started = Metrics.start();
+        reports.clear();
+        MappedLedger file = MappedLedger.open(csv);
+        DateIndex dates = new DateIndex(file);
+        dates.sync();
+        mappedDates = dates;
+        mapped = file;
+        CsvLoader.Result result = file.getOpenResult();
+        Metrics.load(started, file.size(), result.getByteCount(), result.getErrors().size());
+        return new LoadReport(result, 0, null, List.of());
+    }
+
+    /**
+     * Whether rows are still read from the mapped file, see loadLazy.
+     */
+    public boolean isLazy() {
+        return mapped != null;
+    }
+
+    /**
+     * Leave lazy mode: load every row into the column store, using the snapshot as load does.
+     *
+     * @return what the load found, or null if the ledger was not lazy.
+     */
+    public synchronized LoadReport loadAll() throws IOException {
+        MappedLedger file = mapped;
+        if (file == null) {
+            return null;
+        }
+        mapped = null;
+        mappedDates = null;
+        file.close();
+        return load();
+    }
+
+    /**
+     * Open the journal that appends new rows to the transactions file.
+     * A partitioned ledger opens the journal of a segment when the first row for its month arrives.
+     */
+    public void openJournal(JournalWriter.SyncPolicy policy, long windowMillis) throws IOException {
+        journalPolicy = policy;
+        journalWindowMillis = windowMillis;
+        if (!isPartitioned()) {
+            journal = new JournalWriter(csv, policy, windowMillis);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Following the file
+       ------------------------------------------------------------------ */
+
+    /**
+     * Start following the transactions file for rows other programs append, picked up by calling tail.
+     * Call after the load and before adding rows. In lazy mode the mapping is extended instead.
+     *
+     * @throws IllegalStateException for a partitioned ledger, whose rows go to month files, or if rows were
+     *                               added since the load.
+     */
+    public synchronized void startTail() throws IOException {
+        if (tailing) {
+            return;
+        }
+        if (isPartitioned()) {
+            throw new IllegalStateException("a partitioned ledger can not be followed, rows are added to month files");
+        }
+        tailKey = fileKey(csv);
+        if (mapped == null) {
+            if (csvLines != loadedLines) {
+                throw new IllegalStateException("rows were added since the ledger was loaded");
+            }
+            tailChannel = FileChannel.open(csv, StandardOpenOption.READ);
+            tailOffset = loadedOffset;
+            tailLines = loadedLines;
+            headLength = 0;
+            updateHead();
+            ownLines = new ArrayDeque<>();
+        }
+        tailing = true;
+    }
+
+    /**
+     * Read the complete lines added to the transactions file since the last call into the ledger, leaving a
+     * line still being written for the next call. Costs the size of the new part, not of the file.
+     * <p>
+     * A file cut shorter than what was read stops following it, restart to reload. A file replaced under the
+     * same name (rotated) is read to its end first; then the new file is read from its start, or from the same
+     * offset if it begins like the old one, i.e. is a copy, and the journal moves to it.
+     */
+    public synchronized TailReport tail() throws IOException {
+        if (!tailing || closed) {
+            return new TailReport(0, List.of(), null, !tailing);
+        }
+        return mapped != null ? tailMapped() : tailFile();
+    }
+
+    public synchronized boolean isTailing() {
+        return tailing;
+    }
+
+    private TailReport tailFile() throws IOException {
+        long started = Metrics.start();
+        long startOffset = tailOffset;
+        List<String> errors = new ArrayList<>();
+        int rows = 0;
+        String problem = null;
+        Object key = fileKey(csv);
+        if (key != null && tailKey != null && !key.equals(tailKey)) {
+            /// our last lines go to the old file before it is read to its end, so they are matched there.
+            if (journal != null) {
+                journal.close();
+            }
+            rows += ingest(tailChannel.size(), errors);
+            problem = follow(key);
+            startOffset = tailOffset;
+        } else if (tailChannel.size() < tailOffset) {
+            stopTail();
+            return new TailReport(0, errors, csv + " is shorter than the part already read, restart to reload it", true);
+        }
+        rows += ingest(CsvLoader.completeLinesEnd(tailChannel, tailOffset, tailChannel.size()), errors);
+        if (tailOffset > startOffset) {
+            Metrics.load(started, rows, tailOffset - startOffset, errors.size());
+        }
+        return new TailReport(rows, errors, problem, false);
+    }
+
+    /// the mapping can only grow, a file replaced or cut short stops following it.
+    private TailReport tailMapped() throws IOException {
+        Object key = fileKey(csv);
+        if ((key != null && tailKey != null && !key.equals(tailKey)) || Files.size(csv) < mapped.getIndexedEnd()) {
+            stopTail();
+            return new TailReport(0, List.of(), csv + " was replaced or cut short, restart to reload it", true);
+        }
+        long started = Metrics.start();
+        int before = mapped.size();
+        CsvLoader.Result result = mapped.refresh();
+        for (int row = before; row < mapped.size(); row++) {
+            reports.added(mapped.getEpochDay(row), mapped.getCents(row));
+        }
+        mappedDates.sync();
+        if (result.getByteCount() > 0) {
+            Metrics.load(started, result.getRowCount(), result.getByteCount(), result.getErrors().size());
+        }
+        return new TailReport(result.getRowCount(), result.getErrors(), null, false);
+    }
+
+    /// parse tailChannel [tailOffset, end) into the ledger, except the lines this ledger wrote.
+    private int ingest(long end, List<String> errors) throws IOException {
+        if (end <= tailOffset) {
+            return 0;
+        }
+        LedgerStore staged = new LedgerStore();
+        CsvLoader.Result result = CsvLoader.load(tailChannel, staged, tailOffset, end, tailLines);
+        errors.addAll(result.getErrors());
+        int[] vendorIds = new int[staged.getVendors().size()];
+        int[] descriptionIds = new int[staged.getDescriptions().size()];
+        Arrays.fill(vendorIds, -1);
+        Arrays.fill(descriptionIds, -1);
+
+        int added = 0;
+        for (int stagedRow = 0; stagedRow < staged.size(); stagedRow++) {
+            if (!ownLines.isEmpty() && readBack(staged.toCsvLine(stagedRow))) {
+                continue;
+            }
+            int row = copy(staged, stagedRow, vendorIds, descriptionIds);
+            track(row);
+            reports.added(store.getEpochDay(row), store.getCents(row));
+            added++;
+        }
+        tailOffset += result.getByteCount();
+        tailLines += result.getLineCount();
+        updateHead();
+        if (added > 0) {
+            dateIndex.sync();
+            vendorIndex.sync();
+            descriptionIndex.sync();
+            aggregates.sync();
+        }
+        return added;
+    }
+
+    /// our lines come back in the order they were written, other programs' lines fall in between. One that never
+    /// shows up, e.g. glued to a line another program left unfinished, is dropped once a later one is read.
+    private boolean readBack(String line) {
+        int lost = 0;
+        for (String own : ownLines) {
+            if (own.equals(line)) {
+                for (int i = 0; i <= lost; i++) {
+                    ownLines.pollFirst();
+                }
+                return true;
+            }
+            lost++;
+        }
+        return false;
+    }
+
+    /// switch to the file now at the csv path, returns what happened.
+    private String follow(Object key) throws IOException {
+        FileChannel next = FileChannel.open(csv, StandardOpenOption.READ);
+        boolean copy = next.size() >= tailOffset && checksum(next, headLength) == headChecksum;
+        tailChannel.close();
+        tailChannel = next;
+        tailKey = key;
+        ownLines.clear();
+        if (journal != null) {
+            journal = new JournalWriter(csv, journalPolicy, journalWindowMillis);
+        }
+        if (copy) {
+            return csv + " was replaced by a copy, continuing after the rows already read";
+        }
+        tailOffset = 0;
+        tailLines = 0;
+        headLength = 0;
+        updateHead();
+        /// the store still holds the rows of the old file.
+        snapshotStale = true;
+        return csv + " was replaced, rows of the new file are added to the ones already read";
+    }
+
+    private void stopTail() throws IOException {
+        tailing = false;
+        ownLines = null;
+        snapshotStale = true;
+        if (tailChannel != null) {
+            tailChannel.close();
+            tailChannel = null;
+        }
+    }
+
+    /// checksum the first HEAD_BYTES of the followed file once that much has been read.
+    private void updateHead() throws IOException {
+        if (headLength < HEAD_BYTES && tailOffset > headLength) {
+            headLength = (int) Math.min(HEAD_BYTES, tailOffset);
+            headChecksum = checksum(tailChannel, headLength);
+        }
+    }
+
+    private static long checksum(FileChannel channel, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) < 0) {
+                break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), 0, head.position());
+        return crc.getValue();
+    }
+
+    /// identity of the file at a path (device and inode on Linux), null if it is missing or the file system has none.
+    private static Object fileKey(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Balance of the whole ledger at the end of a day, including months a range load left out.
+     */
+    public long balanceAsOf(LocalDate date) {
+        DateIndex dates = mappedDates;
+        if (dates != null) {
+            DateIndex.View view = dates.view();
+            return sum(view, 0, view.upperBound((int) date.toEpochDay())).getNetCents();
+        }
+        return priorNetCents + aggregates.balanceAsOf(date);
+    }
+
+    /**
+     * Totals of the whole ledger.
+     */
+    public LedgerAggregates.Totals overall() {
+        DateIndex dates = mappedDates;
+        if (dates != null) {
+            DateIndex.View view = dates.view();
+            return sum(view, 0, view.size());
+        }
+        return aggregates.overall();
+    }
+
+    /**
+     * Totals of the rows dated start..end inclusive.
+     */
+    public LedgerAggregates.Totals between(LocalDate start, LocalDate end) {
+        DateIndex dates = mappedDates;
+        if (dates != null) {
+            DateIndex.View view = dates.view();
+            return sum(view, view.lowerBound((int) start.toEpochDay()), view.upperBound((int) end.toEpochDay()));
+        }
+        return aggregates.between(start, end);
+    }
+
+    /**
+     * Rows newest first, totals and closing balance of the days start..end inclusive, from the report cache
+     * when the same report was asked for before and no row has been added to its range since.
+     *
+     * @param type report name, part of the cache key together with the dates.
+     */
+    public ReportCache.Report report(String type, LocalDate start, LocalDate end) {
+        ReportCache.Report cached = reports.get(type, start, end);
+        if (cached != null) {
+            return cached;
+        }
+        long started = Metrics.start();
+        long version = reports.getVersion();
+        DateIndex.View view = getDateIndex().view();
+        int from = view.lowerBound((int) start.toEpochDay());
+        int to = Math.max(from, view.upperBound((int) end.toEpochDay()));
+        int[] rows = new int[to - from];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = view.rowAt(to - 1 - i);
+        }
+        ReportCache.Report report = new ReportCache.Report(type, start, end, rows, between(start, end),
+                balanceAsOf(end));
+        Metrics.query(started, rows.length, rows.length);
+        reports.put(report, version);
+        return report;
+    }
+
+    /// lazy mode has no rollups, amounts of the rows in range are decoded from the mapping.
+    private LedgerAggregates.Totals sum(DateIndex.View view, int from, int to) {
+        MappedLedger file = mapped;
+        LedgerAggregates.Totals totals = new LedgerAggregates.Totals();
+        for (int position = from; position < to; position++) {
+            totals.add(file.getCents(view.rowAt(position)));
+        }
+        return totals;
+    }
+
+    /**
+     * Add one transaction and write it to the journal.
+     * Concurrent callers queue their lines in row order and then wait for the disk together, one group commit.
+     *
+     * @return the new row.
+     */
+    public int add(LocalDate date, LocalTime time, String description, String vendor, long amountCents) throws IOException {
+        long started = Metrics.start();
+        synchronized (this) {
+            if (mapped != null) {
+                int row = addLazy(date, time, description, vendor, amountCents);
+                Metrics.append(started, 1);
+                return row;
+            }
+        }
+        int row;
+        JournalWriter target;
+        long ticket;
+        synchronized (this) {
+            row = store.add(date, time, description, vendor, amountCents);
+            track(row);
+            reports.added(store.getEpochDay(row), amountCents);
+            dateIndex.sync();
+            vendorIndex.sync();
+            descriptionIndex.sync();
+            aggregates.sync();
+
+            target = journalFor(row);
+            String line = store.toCsvLine(row);
+            if (ownLines != null) {
+                ownLines.add(line);
+            }
+            ticket = target.enqueue(List.of(line));
+            csvLines++;
+        }
+        target.awaitDurable(ticket);
+        Metrics.append(started, 1);
+        return row;
+    }
+
+    /// the row only exists in the file, so the line is written and flushed before the mapping picks it up.
+    private int addLazy(LocalDate date, LocalTime time, String description, String vendor, long amountCents) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        LedgerRenderer.appendDate(line, (int) date.toEpochDay());
+        line.append('|');
+        LedgerRenderer.appendTime(line, time.toSecondOfDay());
+        line.append('|').append(description).append('|').append(vendor).append('|');
+        MoneyCodec.appendCents(line, amountCents);
+
+        /// cached reports are updated before the row can be seen, so none is computed with it and then moved again.
+        reports.added((int) date.toEpochDay(), amountCents);
+        try {
+            journal.enqueue(List.of(line.toString()));
+            journal.sync();
+            csvLines++;
+            CsvLoader.Result result = mapped.refresh();
+            if (!result.getErrors().isEmpty()) {
+                throw new IOException("Added line is not readable, " + result.getErrors().get(0));
+            }
+            if (result.getRowCount() != 1) {
+                /// rows another program appended were picked up too.
+                reports.clear();
+            }
+        } catch (IOException e) {
+            reports.clear();
+            throw e;
+        }
+        mappedDates.sync();
+        return mapped.size() - 1;
+    }
+
+    /**
+     * Copy rows of a staging store into the ledger and write them to the journal as a few large group commits,
+     * the indexes and rollups catch up once at the end.
+     *
+     * @param staged store the rows were parsed into.
+     * @param rows   rows of the staging store to add, in the order they are written.
+     * @return number of rows added.
+     */
+    public synchronized int addAll(LedgerStore staged, int[] rows) throws IOException {
+        loadAll();
+        long started = Metrics.start();
+        /// staging dictionary id to ledger dictionary id, each distinct string is looked up once.
+        int[] vendorIds = new int[staged.getVendors().size()];
+        int[] descriptionIds = new int[staged.getDescriptions().size()];
+        Arrays.fill(vendorIds, -1);
+        Arrays.fill(descriptionIds, -1);
+
+        /// lines per journal, a partitioned ledger spreads a statement over the segments of its months.
+        Map<JournalWriter, List<String>> batches = new LinkedHashMap<>();
+        int pending = 0;
+        for (int stagedRow : rows) {
+            int row = copy(staged, stagedRow, vendorIds, descriptionIds);
+            track(row);
+            reports.added(store.getEpochDay(row), store.getCents(row));
+
+            String line = store.toCsvLine(row);
+            if (ownLines != null) {
+                ownLines.add(line);
+            }
+            batches.computeIfAbsent(journalFor(row), target -> new ArrayList<>()).add(line);
+            if (++pending == BATCH_LINES) {
+                appendBatches(batches);
+                pending = 0;
+            }
+        }
+        appendBatches(batches);
+        for (JournalWriter target : batches.keySet()) {
+            target.sync();
+        }
+
+        dateIndex.sync();
+        vendorIndex.sync();
+        descriptionIndex.sync();
+        aggregates.sync();
+        Metrics.append(started, rows.length);
+        return rows.length;
+    }
+
+    /// add a staging row to the store, mapping its dictionary ids; each distinct string is looked up once.
+    private int copy(LedgerStore staged, int stagedRow, int[] vendorIds, int[] descriptionIds) {
+        int vendorId = staged.getVendorId(stagedRow);
+        if (vendorIds[vendorId] < 0) {
+            vendorIds[vendorId] = store.getVendors().encode(staged.getVendor(stagedRow));
+        }
+        int descriptionId = staged.getDescriptionId(stagedRow);
+        if (descriptionIds[descriptionId] < 0) {
+            descriptionIds[descriptionId] = store.getDescriptions().encode(staged.getDescription(stagedRow));
+        }
+        return store.addEncoded(staged.getEpochDay(stagedRow), staged.getSecondOfDay(stagedRow),
+                staged.getCents(stagedRow), vendorIds[vendorId], descriptionIds[descriptionId]);
+    }
+
+    /// give a row appended to the file the next id, a partitioned ledger has none.
+    private void track(int row) {
+        if (ids != null) {
+            ids.added(row);
+        }
+    }
+
+    private void appendBatches(Map<JournalWriter, List<String>> batches) throws IOException {
+        for (Map.Entry<JournalWriter, List<String>> batch : batches.entrySet()) {
+            batch.getKey().appendAll(batch.getValue());
+            csvLines += batch.getValue().size();
+            batch.getValue().clear();
+        }
+    }
+
+    /// the journal a new row goes to, for a partitioned ledger the one of its month which also counts the row.
+    private JournalWriter journalFor(int row) throws IOException {
+        if (manifest == null) {
+            return journal;
+        }
+        PartitionManifest.Segment segment = manifest.segment(YearMonth.from(LocalDate.ofEpochDay(store.getEpochDay(row))));
+        if (counted.add(segment) && !manifest.isCurrent(segment)) {
+            /// a month outside the loaded range whose manifest line is out of date.
+            manifest.rescan(segment);
+        }
+        segment.add(store.getEpochDay(row), store.getCents(row));
+        appended.add(segment);
+
+        JournalWriter target = segmentJournals.get(segment.getMonth());
+        if (target == null) {
+            target = new JournalWriter(manifest.file(segment), journalPolicy, journalWindowMillis);
+            segmentJournals.put(segment.getMonth(), target);
+        }
+        return target;
+    }
+
+    /* ------------------------------------------------------------------
+       Edits
+       ------------------------------------------------------------------ */
+
+    /**
+     * Id of a row, the key for update and delete. It stays the same across restarts and compaction.
+     */
+    public synchronized int getId(int row) {
+        requireIds();
+        return ids.idOf(row);
+    }
+
+    /**
+     * Ids of the rows present now, for looking up many without taking the lock for each; null for a partitioned
+     * ledger, which has none.
+     */
+    public synchronized IntUnaryOperator getIds() {
+        return ids == null ? null : ids.idsBelow(store.size());
+    }
+
+    /**
+     * Current row of a transaction, -1 if there is no transaction with that id or it was deleted.
+     */
+    public synchronized int findRow(int id) {
+        requireIds();
+        return ids.rowOf(id);
+    }
+
+    /**
+     * Replace a transaction. The change is one record appended to the edit log, the transactions file is not
+     * touched; the old row is deleted and the new version added, with the same id.
+     *
+     * @return the row of the new version, -1 if there is no transaction with that id.
+     * @throws IllegalArgumentException if the description or vendor holds a '|' or a line break.
+     * @throws IllegalStateException    for a partitioned ledger, or before load and openJournal.
+     */
+    public int update(int id, LocalDate date, LocalTime time, String description, String vendor, long amountCents) throws IOException {
+        /// the new line is stored inside an edit log record, a separator in it would cut the record apart.
+        if (!fitsLine(description) || !fitsLine(vendor)) {
+            throw new IllegalArgumentException("description and vendor can not contain '|' or line breaks");
+        }
+        long started = Metrics.start();
+        int row;
+        synchronized (editLock) {
+            JournalWriter target;
+            long ticket;
+            synchronized (this) {
+                checkEditable();
+                int old = ids.rowOf(id);
+                if (old < 0) {
+                    return -1;
+                }
+                target = editJournal();
+                String before = store.toCsvLine(old);
+                row = replace(old, id, (int) date.toEpochDay(), time.toSecondOfDay(), description, vendor, amountCents);
+                dateIndex.sync();
+                vendorIndex.sync();
+                descriptionIndex.sync();
+                aggregates.sync();
+                ticket = target.enqueue(List.of(EditLog.update(id, before, store.toCsvLine(row))));
+                deadRecords++;
+            }
+            target.awaitDurable(ticket);
+        }
+        Metrics.append(started, 1);
+        compactIfDue();
+        return row;
+    }
+
+    /**
+     * Delete a transaction, one record appended to the edit log.
+     *
+     * @return false if there is no transaction with that id.
+     * @throws IllegalStateException for a partitioned ledger, or before load and openJournal.
+     */
+    public boolean delete(int id) throws IOException {
+        long started = Metrics.start();
+        synchronized (editLock) {
+            JournalWriter target;
+            long ticket;
+            synchronized (this) {
+                checkEditable();
+                int row = ids.rowOf(id);
+                if (row < 0) {
+                    return false;
+                }
+                target = editJournal();
+                String before = store.toCsvLine(row);
+                remove(row, id);
+                dateIndex.sync();
+                vendorIndex.sync();
+                descriptionIndex.sync();
+                aggregates.sync();
+                ticket = target.enqueue(List.of(EditLog.delete(id, before)));
+                deadRecords++;
+            }
+            target.awaitDurable(ticket);
+        }
+        Metrics.append(started, 1);
+        compactIfDue();
+        return true;
+    }
+
+    /**
+     * Whether a description or vendor can be stored as a field of a line, without '|' or line breaks.
+     */
+    static boolean fitsLine(String text) {
+        return text.indexOf('|') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0;
+    }
+
+    /**
+     * Records in the edit log, i.e. rows a compaction would drop or rewrite.
+     */
+    public synchronized int getDeadRecords() {
+        return deadRecords;
+    }
+
+    /// delete the row holding the id and add its new version, the indexes catch up later.
+    private int replace(int old, int id, int epochDay, int secondOfDay, String description, String vendor, long cents) {
+        remove(old, id);
+        int row = store.add(epochDay, secondOfDay, description, vendor, cents);
+        ids.replaced(id, row);
+        reports.added(epochDay, cents);
+        return row;
+    }
+
+    private void remove(int row, int id) {
+        reports.added(store.getEpochDay(row), -store.getCents(row));
+        store.delete(row);
+        ids.deleted(id);
+    }
+
+    /// journal of the edit log, created with the first edit.
+    private JournalWriter editJournal() throws IOException {
+        if (editJournal == null) {
+            editJournal = new JournalWriter(edits, journalPolicy, journalWindowMillis);
+        }
+        return editJournal;
+    }
+
+    /// the ledger can take edits, after leaving lazy mode.
+    private void checkEditable() throws IOException {
+        if (isPartitioned()) {
+            throw new IllegalStateException("a partitioned ledger can not be edited, rows are kept in month files");
+        }
+        if (closed) {
+            throw new IOException("ledger is closed");
+        }
+        loadAll();
+        requireIds();
+        if (journalPolicy == null) {
+            throw new IllegalStateException("openJournal must be called before editing");
+        }
+    }
+
+    /// whether the edit log holds records, which a lazy load would not apply.
+    private boolean hasEdits() throws IOException {
+        return Files.exists(edits) && Files.size(edits) > 0;
+    }
+
+    private void requireIds() {
+        if (ids == null) {
+            throw new IllegalStateException(isPartitioned() ? "a partitioned ledger has no transaction ids"
+                    : "the ledger must be loaded first");
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Compaction
+       ------------------------------------------------------------------ */
+
+    /**
+     * Rewrite the transactions file as the rows are now, without the deleted ones and with edited rows in their
+     * new version, then empty the edit log. Ids do not change, the ids file records them for the next load.
+     * Runs in the background on its own once getDeadRecords reaches -Dtracker.compact.threshold.
+     * <p>
+     * The file is written next to the old one without holding the ledger lock, so appends carry on meanwhile and
+     * are copied over at the end; edits wait until it is done. The snapshot is dropped, the next load reads the file.
+     * Lines that were rejected on load are not carried over. Other programs must not append during a compaction.
+     *
+     * @throws IllegalStateException for a partitioned ledger, or while the file is being followed.
+     */
+    public void compact() throws IOException {
+        synchronized (editLock) {
+            int rows;
+            IntUnaryOperator idOf;
+            synchronized (this) {
+                checkEditable();
+                if (tailing) {
+                    throw new IllegalStateException("the transactions file can not be compacted while it is followed");
+                }
+                if (deadRecords == 0) {
+                    return;
+                }
+                if (journal != null) {
+                    journal.sync();
+                }
+                rows = store.size();
+                idOf = ids.idsBelow(rows);
+            }
+
+            Path temp = compactedFile();
+            TransactionIds.Runs runs = new TransactionIds.Runs();
+            boolean committed = false;
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try (Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 1 << 16)) {
+                /// rows below the ones taken only change through edits, which wait for the edit lock.
+                long lines = writeLive(out, 0, rows, idOf, runs);
+                synchronized (this) {
+                    int total = store.size();
+                    lines += writeLive(out, rows, total, ids.idsBelow(total), runs);
+                    out.flush();
+                    channel.force(true);
+                    if (journal != null) {
+                        journal.close();
+                    }
+                    try {
+                        /// the ids file commits the compaction, a load finishes one that stopped after it.
+                        TransactionIds.write(idsFile, temp, channel.size(), ids.getNextId(), runs);
+                        committed = true;
+                        Files.move(temp, csv, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        dropEdits();
+                        csvLines = lines;
+                        deadRecords = 0;
+                        /// the store still holds the deleted rows, and in another order than the new file.
+                        snapshotStale = true;
+                        Files.deleteIfExists(snapshot);
+                    } finally {
+                        if (journal != null) {
+                            journal = new JournalWriter(csv, journalPolicy, journalWindowMillis);
+                        }
+                    }
+                }
+            } finally {
+                if (!committed) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Why the last background compaction failed, or null.
+     */
+    public Exception getCompactionFailure() {
+        return compactionFailure;
+    }
+
+    /// start a background compaction once enough records are dead, unless one is running or the file is followed.
+    private void compactIfDue() {
+        synchronized (this) {
+            if (compactThreshold <= 0 || deadRecords < compactThreshold || tailing || closed
+                    || (compactor != null && compactor.isAlive())) {
+                return;
+            }
+            compactor = new Thread(() -> {
+                try {
+                    compact();
+                    compactionFailure = null;
+                } catch (IOException | RuntimeException e) {
+                    compactionFailure = e;
+                }
+            }, "ledger-compact");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+
+    /// write the rows of [from, to) that are not deleted as file lines, and their ids to the runs.
+    private long writeLive(Writer out, int from, int to, IntUnaryOperator idOf, TransactionIds.Runs runs) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        long lines = 0;
+        for (int row = from; row < to; row++) {
+            if (store.isDeleted(row)) {
+                continue;
+            }
+            line.setLength(0);
+            store.appendCsvLine(line, row);
+            line.append('\n');
+            out.append(line);
+            runs.add(idOf.applyAsInt(row));
+            lines++;
+        }
+        return lines;
+    }
+
+    /// a compaction that stopped after writing the ids file but before moving the new file into place is finished.
+    private void finishCompaction() throws IOException {
+        Path temp = compactedFile();
+        if (Files.notExists(temp)) {
+            return;
+        }
+        if (Files.exists(idsFile)) {
+            TransactionIds written = TransactionIds.read(idsFile);
+            if (!written.describes(csv) && written.describes(temp)) {
+                Files.move(temp, csv, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                dropEdits();
+                Files.deleteIfExists(snapshot);
+                return;
+            }
+        }
+        Files.delete(temp);
+    }
+
+    private void dropEdits() throws IOException {
+        if (editJournal != null) {
+            editJournal.close();
+            editJournal = null;
+        }
+        Files.deleteIfExists(edits);
+    }
+
+    private Path compactedFile() {
+        return csv.resolveSibling(csv.getFileName() + ".compact");
+    }
+
+    /**
+     * Flush and close the journal, then save the snapshot, or for a partitioned ledger the manifest.
+     * Only the first call does anything.
+     *
+     * @throws IOException if the journal could not be flushed, no snapshot is written then.
+     */
+    @Override
+    public void close() throws IOException {
+        /// let a compaction that was started finish, it may not have taken the edit lock yet.
+        Thread running;
+        synchronized (this) {
+            running = compactor;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (editLock) {
+            synchronized (this) {
+                closeLocked();
+            }
+        }
+    }
+
+    private void closeLocked() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (journal != null) {
+            journal.close();
+        }
+        if (editJournal != null) {
+            editJournal.close();
+        }
+        if (tailChannel != null) {
+            /// read back our last lines and any other complete ones, so the snapshot covers exactly what was read.
+            try {
+                if (tailKey != null && !tailKey.equals(fileKey(csv))) {
+                    snapshotStale = true;
+                }
+                ingest(CsvLoader.completeLinesEnd(tailChannel, tailOffset, tailChannel.size()), new ArrayList<>());
+            } finally {
+                tailChannel.close();
+            }
+        }
+        if (mapped != null) {
+            /// the store is empty in lazy mode, the existing snapshot still covers a prefix of the file.
+            mapped.close();
+        } else if (manifest != null) {
+            for (JournalWriter target : segmentJournals.values()) {
+                target.close();
+            }
+            if (!appended.isEmpty()) {
+                for (PartitionManifest.Segment segment : appended) {
+                    manifest.recordSize(segment);
+                }
+                manifest.write();
+            }
+        } else if (snapshotStale) {
+            Files.deleteIfExists(snapshot);
+        } else if (tailChannel != null && snapshotEnabled()) {
+            LedgerSnapshot.write(snapshot, csv, store, tailOffset, tailLines, this::isFileRow);
+        } else if (loaded && snapshotEnabled()) {
+            /// the store holds what was read plus what this ledger appended. If another program appended too, its
+            /// lines are not in the store, so the snapshot the load used is kept and the next load reads them.
+            long covered = loadedOffset + (journal != null ? journal.getBytesWritten() - loadedJournalBytes : 0);
+            if (Files.size(csv) == covered) {
+                LedgerSnapshot.write(snapshot, csv, store, covered, csvLines, this::isFileRow);
+            }
+        }
+    }
+
+    /// new versions of edited rows are in the edit log, not in the file.
+    private boolean isFileRow(int row) {
+        return ids == null || !ids.isVersion(row);
+    }
+
+    /// -Dtracker.snapshot=false turns off reading and writing the snapshot.
+    private static boolean snapshotEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("tracker.snapshot"));
+    }
+
+    public Path getCsv() {
+        return csv;
+    }
+
+    /**
+     * Directory of the month segments, whether or not the ledger has been migrated yet.
+     */
+    public Path getPartitionDir() {
+        return partitionDir;
+    }
+
+    public LedgerStore getStore() {
+        return store;
+    }
+
+    /**
+     * Rows to show: the mapped file in lazy mode, otherwise the store.
+     */
+    public LedgerRows getRows() {
+        MappedLedger file = mapped;
+        return file != null ? file : store;
+    }
+
+    /**
+     * Date index over getRows.
+     */
+    public DateIndex getDateIndex() {
+        DateIndex dates = mappedDates;
+        return dates != null ? dates : dateIndex;
+    }
+
+    public VendorIndex getVendorIndex() {
+        return vendorIndex;
+    }
+
+    public DescriptionIndex getDescriptionIndex() {
+        return descriptionIndex;
+    }
+
+    public LedgerAggregates getAggregates() {
+        return aggregates;
+    }
+
+    public QueryEngine getQueryEngine() {
+        return queryEngine;
+    }
+
+    public LedgerAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    public ReportCache getReportCache() {
+        return reports;
+    }
+}
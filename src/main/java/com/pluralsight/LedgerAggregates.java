@@ -0,0 +1,256 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rollup tables kept next to the ledger: deposit total, payment total, net and count per day,
+ * month, year and vendor, plus the overall balance.
+ * Every row is added to its rollups once, when the table catches up with the store, so period
+ * totals and running balances are sums over a handful of rollups instead of over the rows.
+ * A deleted row is taken out of them again the same way.
+ * Catching up and lookups share one lock and lookups return copies, so a report never sees a half applied row.
+ */
+public class LedgerAggregates {
+
+    /**
+     * Sums for one day, month, year or vendor. Payments are negative.
+     */
+    public static class Totals {
+        private long depositCents;
+        private long paymentCents;
+        private long count;
+
+        void add(long cents) {
+            if (cents > 0) {
+                depositCents += cents;
+            } else {
+                paymentCents += cents;
+            }
+            count++;
+        }
+
+        void remove(long cents) {
+            if (cents > 0) {
+                depositCents -= cents;
+            } else {
+                paymentCents -= cents;
+            }
+            count--;
+        }
+
+        void add(Totals other) {
+            depositCents += other.depositCents;
+            paymentCents += other.paymentCents;
+            count += other.count;
+        }
+
+        Totals copy() {
+            Totals copy = new Totals();
+            copy.add(this);
+            return copy;
+        }
+
+        public long getDepositCents() {
+            return depositCents;
+        }
+
+        public long getPaymentCents() {
+            return paymentCents;
+        }
+
+        public long getNetCents() {
+            return depositCents + paymentCents;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /// day rollup that also points at its month and year, so a row updates all three with one lookup.
+    private static class DayTotals extends Totals {
+        private final Totals month;
+        private final Totals year;
+
+        DayTotals(Totals month, Totals year) {
+            this.month = month;
+            this.year = year;
+        }
+    }
+
+    private final LedgerStore store;
+    private final TreeMap<Integer, DayTotals> days = new TreeMap<>();
+    /// keyed by year * 12 + month - 1.
+    private final TreeMap<Integer, Totals> months = new TreeMap<>();
+    private final TreeMap<Integer, Totals> years = new TreeMap<>();
+    private final Map<String, Totals> vendors = new HashMap<>();
+    private Totals[] totalsByVendorId = new Totals[0];
+    private final Totals overall = new Totals();
+    private int aggregatedRows;
+    /// deletions of the store already taken out of the rollups.
+    private int removedRows;
+
+    /// ledgers are mostly in date order, so consecutive rows usually hit the same day.
+    private int lastDay = Integer.MIN_VALUE;
+    private DayTotals lastDayTotals;
+
+    public LedgerAggregates(LedgerStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Add rows appended to the store since the last call to the rollups and take out the rows deleted since.
+     */
+    public synchronized void sync() {
+        int total = store.size();
+        StringDictionary vendorNames = store.getVendors();
+        if (totalsByVendorId.length < vendorNames.size()) {
+            totalsByVendorId = Arrays.copyOf(totalsByVendorId, vendorNames.size());
+        }
+        for (int row = aggregatedRows; row < total; row++) {
+            long cents = store.getCents(row);
+            DayTotals day = dayTotals(store.getEpochDay(row));
+            day.add(cents);
+            day.month.add(cents);
+            day.year.add(cents);
+            overall.add(cents);
+
+            int vendorId = store.getVendorId(row);
+            Totals vendor = totalsByVendorId[vendorId];
+            if (vendor == null) {
+                vendor = vendors.computeIfAbsent(VendorIndex.normalize(vendorNames.decode(vendorId)), key -> new Totals());
+                totalsByVendorId[vendorId] = vendor;
+            }
+            vendor.add(cents);
+        }
+        aggregatedRows = total;
+
+        /// a row deleted right after it was appended may not be added yet, it is taken out by a later call.
+        int deletions = store.getDeletedCount();
+        while (removedRows < deletions && store.getDeletedRow(removedRows) < total) {
+            int row = store.getDeletedRow(removedRows++);
+            long cents = store.getCents(row);
+            DayTotals day = dayTotals(store.getEpochDay(row));
+            day.remove(cents);
+            day.month.remove(cents);
+            day.year.remove(cents);
+            overall.remove(cents);
+            totalsByVendorId[store.getVendorId(row)].remove(cents);
+        }
+    }
+
+    private DayTotals dayTotals(int epochDay) {
+        if (epochDay == lastDay) {
+            return lastDayTotals;
+        }
+        DayTotals day = days.get(epochDay);
+        if (day == null) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            Totals month = months.computeIfAbsent(monthKey(date), key -> new Totals());
+            Totals year = years.computeIfAbsent(date.getYear(), key -> new Totals());
+            day = new DayTotals(month, year);
+            days.put(epochDay, day);
+        }
+        lastDay = epochDay;
+        lastDayTotals = day;
+        return day;
+    }
+
+    private static int monthKey(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /* ------------------------------------------------------------------
+       Lookups
+       ------------------------------------------------------------------ */
+
+    /**
+     * Totals of every row in the ledger, the net is the current balance.
+     */
+    public synchronized Totals overall() {
+        sync();
+        return overall.copy();
+    }
+
+    /**
+     * Totals of the rows dated start..end inclusive, summed from whole months and the days around them.
+     */
+    public synchronized Totals between(LocalDate start, LocalDate end) {
+        sync();
+        Totals result = new Totals();
+        if (end.isBefore(start)) {
+            return result;
+        }
+        LocalDate firstFullMonth = start.getDayOfMonth() == 1 ? start : start.withDayOfMonth(1).plusMonths(1);
+        LocalDate afterLastFullMonth = end.plusDays(1).withDayOfMonth(1);
+
+        if (!firstFullMonth.isBefore(afterLastFullMonth)) {
+            addDays(result, start, end);
+            return result;
+        }
+        addDays(result, start, firstFullMonth.minusDays(1));
+        for (Totals month : months.subMap(monthKey(firstFullMonth), monthKey(afterLastFullMonth)).values()) {
+            result.add(month);
+        }
+        addDays(result, afterLastFullMonth, end);
+        return result;
+    }
+
+    /**
+     * Running balance at the end of the given day: whole years, then whole months, then days before it.
+     */
+    public synchronized long balanceAsOf(LocalDate date) {
+        sync();
+        long balance = 0;
+        for (Totals year : years.headMap(date.getYear()).values()) {
+            balance += year.getNetCents();
+        }
+        for (Totals month : months.subMap(date.getYear() * 12, monthKey(date)).values()) {
+            balance += month.getNetCents();
+        }
+        for (Totals day : days.subMap((int) date.withDayOfMonth(1).toEpochDay(), true, (int) date.toEpochDay(), true).values()) {
+            balance += day.getNetCents();
+        }
+        return balance;
+    }
+
+    /**
+     * Totals for one vendor, matched ignoring case and surrounding spaces.
+     */
+    public synchronized Totals vendor(String vendor) {
+        sync();
+        Totals totals = vendors.get(VendorIndex.normalize(vendor));
+        return totals == null ? new Totals() : totals.copy();
+    }
+
+    /**
+     * Totals for one calendar month.
+     */
+    public synchronized Totals month(int year, int month) {
+        sync();
+        Totals totals = months.get(year * 12 + month - 1);
+        return totals == null ? new Totals() : totals.copy();
+    }
+
+    /**
+     * Totals for one calendar year.
+     */
+    public synchronized Totals year(int year) {
+        sync();
+        Totals totals = years.get(year);
+        return totals == null ? new Totals() : totals.copy();
+    }
+
+    private void addDays(Totals result, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            return;
+        }
+        for (Totals day : days.subMap((int) from.toEpochDay(), true, (int) to.toEpochDay(), true).values()) {
+            result.add(day);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.stream.IntStream;
+
+/**
+ * Analytics over a date range of the ledger: spend per vendor, the top vendors by outflow, income and spend
+ * per month and the largest transactions.
+ * <p>
+ * A report takes one date index view and cuts its positions inside the range into chunks that are reduced
+ * in parallel. Every chunk adds into its own primitive arrays (per vendor id, per month, a bounded heap of rows)
+ * and the chunks are merged once at the end, so a scan neither shares state between threads nor allocates per
+ * row. Rows appended while a report runs are left for the next one, deleted rows are not in the view.
+ */
+public class LedgerAnalytics {
+
+    /// rows per chunk, large enough that merging a chunk's arrays costs little next to scanning it.
+    private static final int CHUNK_ROWS = 64 * 1024;
+
+    /**
+     * Deposits and payments per vendor, vendors with the largest outflow first.
+     */
+    public static class VendorSpend {
+        private final String[] vendors;
+        private final long[] outflowCents;
+        private final long[] inflowCents;
+        private final long[] counts;
+
+        VendorSpend(String[] vendors, long[] outflowCents, long[] inflowCents, long[] counts) {
+            this.vendors = vendors;
+            this.outflowCents = outflowCents;
+            this.inflowCents = inflowCents;
+            this.counts = counts;
+        }
+
+        /**
+         * Number of vendors listed.
+         */
+        public int size() {
+            return vendors.length;
+        }
+
+        public String getVendor(int index) {
+            return vendors[index];
+        }
+
+        /**
+         * Sum of the payments to the vendor as a positive amount.
+         */
+        public long getOutflowCents(int index) {
+            return outflowCents[index];
+        }
+
+        public long getInflowCents(int index) {
+            return inflowCents[index];
+        }
+
+        public long getCount(int index) {
+            return counts[index];
+        }
+    }
+
+    /**
+     * Income and spend per calendar month of the range, oldest month first, months without rows included.
+     */
+    public static class MonthlyFlow {
+        private final YearMonth first;
+        private final long[] incomeCents;
+        private final long[] spendCents;
+
+        MonthlyFlow(YearMonth first, long[] incomeCents, long[] spendCents) {
+            this.first = first;
+            this.incomeCents = incomeCents;
+            this.spendCents = spendCents;
+        }
+
+        public int size() {
+            return incomeCents.length;
+        }
+
+        public YearMonth getMonth(int index) {
+            return first.plusMonths(index);
+        }
+
+        /**
+         * Sum of the deposits of the month.
+         */
+        public long getIncomeCents(int index) {
+            return incomeCents[index];
+        }
+
+        /**
+         * Sum of the payments of the month as a positive amount.
+         */
+        public long getSpendCents(int index) {
+            return spendCents[index];
+        }
+
+        public long getNetCents(int index) {
+            return incomeCents[index] - spendCents[index];
+        }
+    }
+
+    /// per chunk sums, indexed by vendor id or by month of the range.
+    private static class Sums {
+        final long[] outflow;
+        final long[] inflow;
+        final long[] counts;
+
+        Sums(int size) {
+            outflow = new long[size];
+            inflow = new long[size];
+            counts = new long[size];
+        }
+
+        Sums merge(Sums other) {
+            for (int i = 0; i < outflow.length; i++) {
+                outflow[i] += other.outflow[i];
+                inflow[i] += other.inflow[i];
+                counts[i] += other.counts[i];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * The n entries with the largest keys, as a min heap of primitive key and row pairs.
+     */
+    static class TopN {
+        private final long[] keys;
+        private final int[] values;
+        private int size;
+
+        TopN(int n) {
+            keys = new long[n];
+            values = new int[n];
+        }
+
+        void offer(long key, int value) {
+            if (size < keys.length) {
+                keys[size] = key;
+                values[size] = value;
+                siftUp(size++);
+            } else if (size > 0 && key > keys[0]) {
+                keys[0] = key;
+                values[0] = value;
+                siftDown(0);
+            }
+        }
+
+        TopN merge(TopN other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.keys[i], other.values[i]);
+            }
+            return this;
+        }
+
+        /// empties the heap, largest key first.
+        int[] drainDescending() {
+            int[] drained = new int[size];
+            for (int i = drained.length - 1; i >= 0; i--) {
+                drained[i] = values[0];
+                size--;
+                keys[0] = keys[size];
+                values[0] = values[size];
+                siftDown(0);
+            }
+            return drained;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (keys[parent] <= keys[index]) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                if (left < size && keys[left] < keys[smallest]) {
+                    smallest = left;
+                }
+                if (left + 1 < size && keys[left + 1] < keys[smallest]) {
+                    smallest = left + 1;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            int value = values[a];
+            values[a] = values[b];
+            values[b] = value;
+        }
+    }
+
+    private final LedgerStore store;
+    private final DateIndex dateIndex;
+
+    public LedgerAnalytics(LedgerStore store, DateIndex dateIndex) {
+        this.store = store;
+        this.dateIndex = dateIndex;
+    }
+
+    /**
+     * Deposits and payments of every vendor with rows in the range, largest outflow first.
+     *
+     * @param start first day, null for the oldest row.
+     * @param end   last day, null for the newest row.
+     */
+    public VendorSpend vendorSpend(LocalDate start, LocalDate end) {
+        return topVendors(start, end, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The n vendors with the largest outflow in the range, largest first. Vendors with no payments only
+     * make the list when fewer than n vendors had any.
+     */
+    public VendorSpend topVendors(LocalDate start, LocalDate end, int n) {
+        long started = Metrics.start();
+        DateIndex.View view = dateIndex.view();
+        int from = from(view, start);
+        int to = to(view, end);
+        /// ids handed out later than this belong to rows the view does not hold.
+        int vendorCount = store.getVendors().size();
+        Sums sums = chunks(from, to).parallel()
+                .mapToObj(chunk -> {
+                    Sums chunkSums = new Sums(vendorCount);
+                    int last = Math.min(to, from + (chunk + 1) * CHUNK_ROWS);
+                    for (int position = from + chunk * CHUNK_ROWS; position < last; position++) {
+                        int row = view.rowAt(position);
+                        int vendorId = store.getVendorId(row);
+                        long cents = store.getCents(row);
+                        if (cents < 0) {
+                            chunkSums.outflow[vendorId] -= cents;
+                        } else {
+                            chunkSums.inflow[vendorId] += cents;
+                        }
+                        chunkSums.counts[vendorId]++;
+                    }
+                    return chunkSums;
+                })
+                .reduce(Sums::merge)
+                .orElseGet(() -> new Sums(vendorCount));
+
+        TopN top = new TopN(Math.min(n, vendorCount));
+        for (int vendorId = 0; vendorId < vendorCount; vendorId++) {
+            if (sums.counts[vendorId] > 0) {
+                top.offer(sums.outflow[vendorId], vendorId);
+            }
+        }
+        int[] vendorIds = top.drainDescending();
+        String[] vendors = new String[vendorIds.length];
+        long[] outflow = new long[vendorIds.length];
+        long[] inflow = new long[vendorIds.length];
+        long[] counts = new long[vendorIds.length];
+        for (int i = 0; i < vendorIds.length; i++) {
+            vendors[i] = store.getVendors().decode(vendorIds[i]);
+            outflow[i] = sums.outflow[vendorIds[i]];
+            inflow[i] = sums.inflow[vendorIds[i]];
+            counts[i] = sums.counts[vendorIds[i]];
+        }
+        Metrics.query(started, Math.max(0, to - from), vendors.length);
+        return new VendorSpend(vendors, outflow, inflow, counts);
+    }
+
+    /**
+     * Income and spend per month from the month of start to the month of end. Without start or end the range
+     * runs from the month of the oldest row or to the month of the newest one.
+     *
+     * @return null if the range holds no rows.
+     */
+    public MonthlyFlow monthlyFlow(LocalDate start, LocalDate end) {
+        long started = Metrics.start();
+        DateIndex.View view = dateIndex.view();
+        int from = from(view, start);
+        int to = to(view, end);
+        if (from >= to) {
+            return null;
+        }
+        YearMonth first = YearMonth.from(start != null ? start : LocalDate.ofEpochDay(store.getEpochDay(view.rowAt(from))));
+        YearMonth last = YearMonth.from(end != null ? end : LocalDate.ofEpochDay(store.getEpochDay(view.rowAt(to - 1))));
+        int months = (int) (last.getYear() * 12L + last.getMonthValue() - first.getYear() * 12L - first.getMonthValue()) + 1;
+        /// first day of every month plus the day after the last one, rows are walked in date order against them.
+        int[] monthStarts = new int[months + 1];
+        for (int month = 0; month <= months; month++) {
+            monthStarts[month] = (int) first.plusMonths(month).atDay(1).toEpochDay();
+        }
+
+        Sums sums = chunks(from, to).parallel()
+                .mapToObj(chunk -> {
+                    Sums chunkSums = new Sums(months);
+                    int position = from + chunk * CHUNK_ROWS;
+                    int lastPosition = Math.min(to, position + CHUNK_ROWS);
+                    int month = monthOf(monthStarts, store.getEpochDay(view.rowAt(position)));
+                    for (; position < lastPosition; position++) {
+                        int row = view.rowAt(position);
+                        int epochDay = store.getEpochDay(row);
+                        while (epochDay >= monthStarts[month + 1]) {
+                            month++;
+                        }
+                        long cents = store.getCents(row);
+                        if (cents < 0) {
+                            chunkSums.outflow[month] -= cents;
+                        } else {
+                            chunkSums.inflow[month] += cents;
+                        }
+                        chunkSums.counts[month]++;
+                    }
+                    return chunkSums;
+                })
+                .reduce(Sums::merge)
+                .orElseGet(() -> new Sums(months));
+        Metrics.query(started, to - from, months);
+        return new MonthlyFlow(first, sums.inflow, sums.outflow);
+    }
+
+    /**
+     * The n rows in the range with the largest amounts either way, payments and deposits alike, largest first.
+     */
+    public int[] largestTransactions(LocalDate start, LocalDate end, int n) {
+        long started = Metrics.start();
+        DateIndex.View view = dateIndex.view();
+        int from = from(view, start);
+        int to = to(view, end);
+        int limit = Math.max(0, Math.min(n, to - from));
+        int[] rows = chunks(from, to).parallel()
+                .mapToObj(chunk -> {
+                    TopN top = new TopN(limit);
+                    int last = Math.min(to, from + (chunk + 1) * CHUNK_ROWS);
+                    for (int position = from + chunk * CHUNK_ROWS; position < last; position++) {
+                        int row = view.rowAt(position);
+                        top.offer(Math.abs(store.getCents(row)), row);
+                    }
+                    return top;
+                })
+                .reduce(TopN::merge)
+                .orElseGet(() -> new TopN(0))
+                .drainDescending();
+        Metrics.query(started, Math.max(0, to - from), rows.length);
+        return rows;
+    }
+
+    private static IntStream chunks(int from, int to) {
+        return IntStream.range(0, Math.max(0, (to - from + CHUNK_ROWS - 1) / CHUNK_ROWS));
+    }
+
+    private static int from(DateIndex.View view, LocalDate start) {
+        return start == null ? 0 : view.lowerBound((int) start.toEpochDay());
+    }
+
+    private static int to(DateIndex.View view, LocalDate end) {
+        return end == null ? view.size() : view.upperBound((int) end.toEpochDay());
+    }
+
+    /// month whose first day is the last one on or before the given day.
+    private static int monthOf(int[] monthStarts, int epochDay) {
+        int low = 0;
+        int high = monthStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (monthStarts[mid] <= epochDay) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
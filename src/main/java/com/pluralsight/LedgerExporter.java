@@ -0,0 +1,279 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams rows of the ledger to a file as transactions.csv lines or as JSON Lines, gzipped when the file name ends
+ * in .gz. The rows come from a RowSource, e.g. a date index view, and are encoded straight into one reused byte
+ * buffer that is written to a FileChannel whenever it fills, so an export of any size holds one buffer in memory.
+ * Dates, times and amounts are written as digits without going through String, vendors and descriptions are
+ * encoded once per dictionary id into a small cache.
+ * <p>
+ * The file is written next to the target and moved into place when complete.
+ */
+public class LedgerExporter {
+
+    public enum Format {
+        /// the transactions.csv format, so an export can be added to another ledger as it is.
+        CSV,
+        /// one JSON object per line with the fields of the batch commands' JSON rows.
+        JSON_LINES
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    /// direct mapped slots per column, vendors all fit and repeated descriptions mostly do.
+    private static final int CACHE_SLOTS = 4096;
+
+    private final LedgerStore store;
+    private final Format format;
+    private final IntUnaryOperator ids;
+    private final EncodedColumn vendors;
+    private final EncodedColumn descriptions;
+
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int lastEpochDay = Integer.MIN_VALUE;
+    private final byte[] lastDate = new byte[10];
+
+    private LedgerExporter(LedgerStore store, Format format, IntUnaryOperator ids) {
+        this.store = store;
+        this.format = format;
+        this.ids = ids;
+        this.vendors = new EncodedColumn(store.getVendors(), format);
+        this.descriptions = new EncodedColumn(store.getDescriptions(), format);
+    }
+
+    /**
+     * Format picked by the file name: .jsonl or .ndjson for JSON Lines, anything else CSV, before an optional .gz.
+     */
+    public static Format formatOf(Path file) {
+        String name = stripGzip(file.getFileName().toString().toLowerCase());
+        return name.endsWith(".jsonl") || name.endsWith(".ndjson") ? Format.JSON_LINES : Format.CSV;
+    }
+
+    public static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+
+    private static String stripGzip(String name) {
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    /**
+     * Write the rows of source that pass the filter, in source order, to the file.
+     *
+     * @param filter null to write every row.
+     * @param ids    transaction id of a row for JSON Lines, see Ledger.getIds; null leaves the id out.
+     * @return rows written.
+     */
+    public static long export(LedgerStore store, LedgerRenderer.RowSource source, IntPredicate filter,
+                              IntUnaryOperator ids, Path file) throws IOException {
+        long started = Metrics.start();
+        LedgerExporter exporter = new LedgerExporter(store, formatOf(file), ids);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream gzip = isGzip(file) ? fastGzip(Channels.newOutputStream(channel)) : null;
+            for (int position = 0; position < source.size(); position++) {
+                int row = source.rowAt(position);
+                if (filter != null && !filter.test(row)) {
+                    continue;
+                }
+                exporter.appendRow(row, channel, gzip);
+                rows++;
+            }
+            exporter.drain(channel, gzip);
+            if (gzip != null) {
+                /// closes the channel too, after writing the gzip trailer.
+                gzip.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Metrics.render(started, (int) Math.min(rows, Integer.MAX_VALUE));
+        return rows;
+    }
+
+    /// the fastest deflate level, close to disk speed at a somewhat larger file than the default level.
+    private static OutputStream fastGzip(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+    }
+
+    /* ------------------------------------------------------------------
+       Encoding
+       ------------------------------------------------------------------ */
+
+    private void appendRow(int row, FileChannel channel, OutputStream gzip) throws IOException {
+        byte[] vendor = vendors.get(store.getVendorId(row));
+        byte[] description = descriptions.get(store.getDescriptionId(row));
+        /// fixed parts of the longest JSON line plus the two strings.
+        int needed = 128 + vendor.length + description.length;
+        if (pos + needed > buf.length) {
+            drain(channel, gzip);
+            if (needed > buf.length) {
+                buf = new byte[needed];
+            }
+        }
+        if (format == Format.CSV) {
+            appendDate(store.getEpochDay(row));
+            buf[pos++] = '|';
+            appendTime(store.getSecondOfDay(row));
+            buf[pos++] = '|';
+            appendBytes(description);
+            buf[pos++] = '|';
+            appendBytes(vendor);
+            buf[pos++] = '|';
+            appendCents(store.getCents(row));
+        } else {
+            buf[pos++] = '{';
+            if (ids != null) {
+                appendAscii("\"id\":");
+                appendLong(ids.applyAsInt(row));
+                buf[pos++] = ',';
+            }
+            appendAscii("\"date\":\"");
+            appendDate(store.getEpochDay(row));
+            appendAscii("\",\"time\":\"");
+            appendTime(store.getSecondOfDay(row));
+            appendAscii("\",\"description\":");
+            appendBytes(description);
+            appendAscii(",\"vendor\":");
+            appendBytes(vendor);
+            appendAscii(",\"amount\":");
+            appendCents(store.getCents(row));
+            buf[pos++] = '}';
+        }
+        buf[pos++] = '\n';
+    }
+
+    private void drain(FileChannel channel, OutputStream gzip) throws IOException {
+        if (gzip != null) {
+            gzip.write(buf, 0, pos);
+        } else {
+            ByteBuffer bytes = ByteBuffer.wrap(buf, 0, pos);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        pos = 0;
+    }
+
+    /// rows usually come in date order, so the date of the last row is kept.
+    private void appendDate(int epochDay) {
+        if (epochDay != lastEpochDay) {
+            StringBuilder date = new StringBuilder(10);
+            LedgerRenderer.appendDate(date, epochDay);
+            for (int i = 0; i < lastDate.length; i++) {
+                lastDate[i] = (byte) date.charAt(i);
+            }
+            lastEpochDay = epochDay;
+        }
+        System.arraycopy(lastDate, 0, buf, pos, lastDate.length);
+        pos += lastDate.length;
+    }
+
+    private void appendTime(int secondOfDay) {
+        appendDigits(secondOfDay / 3600, 2);
+        buf[pos++] = ':';
+        appendDigits(secondOfDay / 60 % 60, 2);
+        buf[pos++] = ':';
+        appendDigits(secondOfDay % 60, 2);
+    }
+
+    /// same text as MoneyCodec.appendCents.
+    private void appendCents(long cents) {
+        if (cents < 0) {
+            buf[pos++] = '-';
+        }
+        long abs = Math.abs(cents);
+        appendLong(abs / 100);
+        buf[pos++] = '.';
+        appendDigits((int) (abs % 100), 2);
+    }
+
+    private void appendLong(long value) {
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        /// digits were written lowest first.
+        for (int low = start, high = pos - 1; low < high; low++, high--) {
+            byte digit = buf[low];
+            buf[low] = buf[high];
+            buf[high] = digit;
+        }
+    }
+
+    private void appendDigits(int value, int width) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += width;
+    }
+
+    private void appendAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buf[pos++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void appendBytes(byte[] bytes) {
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * UTF-8 bytes of dictionary values as they appear in the output, JSON strings quoted and escaped,
+     * in a direct mapped cache by id.
+     */
+    private static class EncodedColumn {
+        private final StringDictionary dictionary;
+        private final Format format;
+        private final int[] ids = new int[CACHE_SLOTS];
+        private final byte[][] bytes = new byte[CACHE_SLOTS][];
+
+        EncodedColumn(StringDictionary dictionary, Format format) {
+            this.dictionary = dictionary;
+            this.format = format;
+            Arrays.fill(ids, -1);
+        }
+
+        byte[] get(int id) {
+            int slot = id & (CACHE_SLOTS - 1);
+            if (ids[slot] != id) {
+                String value = dictionary.decode(id);
+                if (format == Format.JSON_LINES) {
+                    StringBuilder quoted = new StringBuilder(value.length() + 2);
+                    BatchCli.Output.appendString(quoted, value);
+                    value = quoted.toString();
+                }
+                bytes[slot] = value.getBytes(StandardCharsets.UTF_8);
+                ids[slot] = id;
+            }
+            return bytes[slot];
+        }
+    }
+}
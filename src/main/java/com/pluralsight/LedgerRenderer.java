@@ -0,0 +1,138 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Formats ledger rows straight from the store columns, or from the mapped file in lazy mode, into one reusable
+ * line buffer and writes them to the console through a large buffer, without creating Transaction objects or
+ * formatters per row.
+ * Output matches Transaction.toString: "yyyy-MM-dd|HH:mm:ss|description|vendor| $amount" with the
+ * description and vendor padded or truncated to fixed columns.
+ */
+public class LedgerRenderer {
+
+    static final int DESCRIPTION_WIDTH = 30;
+    static final int VENDOR_WIDTH = 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Ordered view of ledger rows, position 0 is the first row shown.
+     */
+    public interface RowSource {
+        int size();
+
+        int rowAt(int position);
+
+        static RowSource of(int[] rows) {
+            return new RowSource() {
+                @Override
+                public int size() {
+                    return rows.length;
+                }
+
+                @Override
+                public int rowAt(int position) {
+                    return rows[position];
+                }
+            };
+        }
+    }
+
+    private final LedgerRows store;
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(96);
+
+    public LedgerRenderer(LedgerRows store, OutputStream out) {
+        this.store = store;
+        this.out = new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE);
+    }
+
+    /**
+     * Write rows [from, to) of the source, one per line, and flush once at the end.
+     */
+    public void render(RowSource rows, int from, int to) throws IOException {
+        long started = Metrics.start();
+        for (int position = from; position < to; position++) {
+            line.setLength(0);
+            appendRow(line, rows.rowAt(position));
+            line.append(System.lineSeparator());
+            out.append(line);
+        }
+        out.flush();
+        Metrics.render(started, Math.max(0, to - from));
+    }
+
+    /**
+     * Append one formatted row, without line break.
+     */
+    public void appendRow(StringBuilder sb, int row) {
+        appendDate(sb, store.getEpochDay(row));
+        sb.append('|');
+        appendTime(sb, store.getSecondOfDay(row));
+        sb.append('|');
+        appendCell(sb, store.getDescription(row), DESCRIPTION_WIDTH);
+        sb.append('|');
+        appendCell(sb, store.getVendor(row), VENDOR_WIDTH);
+        sb.append("| $");
+        MoneyCodec.appendCents(sb, store.getCents(row));
+    }
+
+    /// pad to width, or truncate with "..." when longer, same as Transaction.toString.
+    private static void appendCell(StringBuilder sb, String value, int width) {
+        if (value.length() > width) {
+            sb.append(value, 0, width - 3).append("...");
+            return;
+        }
+        sb.append(value);
+        for (int i = value.length(); i < width; i++) {
+            sb.append(' ');
+        }
+    }
+
+    /**
+     * Append an epoch day as yyyy-MM-dd, for years 0 to 9999.
+     */
+    static void appendDate(StringBuilder sb, int epochDay) {
+        /// inverse of CsvLoader.epochDay, years counted from March so leap days fall at the end.
+        int z = epochDay + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        appendDigits(sb, year, 4);
+        sb.append('-');
+        appendDigits(sb, month, 2);
+        sb.append('-');
+        appendDigits(sb, day, 2);
+    }
+
+    /**
+     * Append a second of day as HH:mm:ss.
+     */
+    static void appendTime(StringBuilder sb, int secondOfDay) {
+        appendDigits(sb, secondOfDay / 3600, 2);
+        sb.append(':');
+        appendDigits(sb, secondOfDay / 60 % 60, 2);
+        sb.append(':');
+        appendDigits(sb, secondOfDay % 60, 2);
+    }
+
+    private static void appendDigits(StringBuilder sb, int value, int width) {
+        int divisor = 1;
+        for (int i = 1; i < width; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            sb.append((char) ('0' + value / divisor % 10));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.pluralsight;
+
+/**
+ * Read access to ledger rows by row number, rows [0, size()) in the order they were added.
+ * Implemented by the in-memory LedgerStore and by MappedLedger, which decodes rows from the file on demand,
+ * so the date index and the renderer work on either.
+ */
+public interface LedgerRows {
+
+    /**
+     * Rows available so far, rows below this number never change.
+     */
+    int size();
+
+    int getEpochDay(int row);
+
+    int getSecondOfDay(int row);
+
+    long getCents(int row);
+
+    String getDescription(int row);
+
+    String getVendor(int row);
+
+    /**
+     * Whether the row was deleted or replaced by an edit, see LedgerStore.delete.
+     */
+    default boolean isDeleted(int row) {
+        return false;
+    }
+
+    /**
+     * Number of rows deleted so far, grows by one with every delete.
+     */
+    default int getDeletedCount() {
+        return 0;
+    }
+
+    /**
+     * Sort key combining date and time, larger is newer.
+     */
+    default long dateTimeKey(int row) {
+        return getEpochDay(row) * 86_400L + getSecondOfDay(row);
+    }
+
+    /**
+     * Format one row as a transactions file line "yyyy-MM-dd|HH:mm:ss|description|vendor|amount", without line break.
+     */
+    default String toCsvLine(int row) {
+        StringBuilder sb = new StringBuilder(64);
+        appendCsvLine(sb, row);
+        return sb.toString();
+    }
+
+    default void appendCsvLine(StringBuilder sb, int row) {
+        LedgerRenderer.appendDate(sb, getEpochDay(row));
+        sb.append('|');
+        LedgerRenderer.appendTime(sb, getSecondOfDay(row));
+        sb.append('|').append(getDescription(row)).append('|').append(getVendor(row)).append('|');
+        MoneyCodec.appendCents(sb, getCents(row));
+    }
+}
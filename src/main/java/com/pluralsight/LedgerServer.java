@@ -0,0 +1,334 @@
+package com.pluralsight;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP server on localhost for dashboards and scripts, started by the "serve" batch command. Every request works
+ * on the one shared Ledger: reads need no lock and concurrent adds share group commits, as in the menu.
+ * <pre>
+ * GET  /ledger?type=all|deposits|payments&amp;offset=0&amp;limit=100   rows newest first
+ * GET  /report/mtd|previous-month|ytd|previous-year
+ * GET  /vendor?name=NAME
+ * GET  /search?from=&amp;to=&amp;description=&amp;vendor=&amp;amount=
+ * POST /deposit, /payment                                    form fields description, vendor, amount, date, time
+ * </pre>
+ * Responses are the JSON documents of the batch commands, or transactions.csv lines with format=csv.
+ * <p>
+ * Requests run one virtual thread each where the JDK has them (21 and later, looked up at run time), otherwise
+ * on a pool of -Dtracker.server.threads platform threads (default 200).
+ */
+public class LedgerServer implements Closeable {
+
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final Ledger book;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    /**
+     * Start serving on 127.0.0.1, the ledger must have been loaded and openJournal called.
+     *
+     * @param port 0 picks a free port, see getPort.
+     */
+    public LedgerServer(Ledger book, int port) throws IOException {
+        this.book = book;
+        ExecutorService virtual = virtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : platformThreadPool(Integer.getInteger("tracker.server.threads", 200));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                Integer.getInteger("tracker.server.backlog", 1024));
+        server.createContext("/ledger", exchange -> handle(exchange, "GET", this::ledger));
+        server.createContext("/report/", exchange -> handle(exchange, "GET", (params, output, err) ->
+                BatchCli.report(book, exchange.getRequestURI().getPath().substring("/report/".length()), output, err)));
+        server.createContext("/vendor", exchange -> handle(exchange, "GET", (params, output, err) ->
+                BatchCli.vendor(book, params.getOrDefault("name", ""), output, err)));
+        server.createContext("/search", exchange -> handle(exchange, "GET", (params, output, err) ->
+                BatchCli.search(book, params, output, err)));
+        server.createContext("/deposit", exchange -> handle(exchange, "POST", (params, output, err) ->
+                add(params, false, output, err)));
+        server.createContext("/payment", exchange -> handle(exchange, "POST", (params, output, err) ->
+                add(params, true, output, err)));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /// Executors.newVirtualThreadPerTaskExecutor, null before Java 21.
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService platformThreadPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+            Thread thread = new Thread(task, "ledger-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Whether requests run on virtual threads rather than the platform thread pool.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stop accepting requests and wait up to a second for the running ones.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Requests
+       ------------------------------------------------------------------ */
+
+    /**
+     * One endpoint: writes its result to the output, messages to err, and returns a BatchCli exit status.
+     */
+    @FunctionalInterface
+    interface Command {
+        int run(Map<String, String> params, BatchCli.Output output, PrintStream err) throws IOException;
+    }
+
+    /// status and headers go out with the first byte of the body, so a command that fails before writing any
+    /// answers with its message instead.
+    private void handle(HttpExchange exchange, String method, Command command) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                sendError(exchange, 405, "Use " + method + " for " + exchange.getRequestURI().getPath());
+                return;
+            }
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            if (method.equals("POST")) {
+                params.putAll(parseParams(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+            }
+            boolean json = !"csv".equalsIgnoreCase(params.get("format"));
+            exchange.getResponseHeaders().set("Content-Type", json ? "application/json; charset=utf-8"
+                    : "text/csv; charset=utf-8");
+
+            ResponseBody body = new ResponseBody(exchange, method.equals("POST") ? 201 : 200);
+            ByteArrayOutputStream messages = new ByteArrayOutputStream();
+            int status;
+            try {
+                BatchCli.Output output = new BatchCli.Output(book, body, json);
+                status = command.run(params, output, new PrintStream(messages, true, StandardCharsets.UTF_8));
+                output.flush();
+            } catch (IllegalArgumentException | IllegalStateException | IOException e) {
+                if (body.started) {
+                    throw e;
+                }
+                messages.write(e.toString().getBytes(StandardCharsets.UTF_8));
+                status = BatchCli.FAILED;
+            }
+            if (!body.started) {
+                if (status == BatchCli.OK) {
+                    exchange.sendResponseHeaders(204, -1);
+                } else {
+                    sendError(exchange, status == BatchCli.USAGE ? 400 : 500, messages.toString(StandardCharsets.UTF_8).trim());
+                }
+            }
+        }
+    }
+
+    /// rows of the ledger screen newest first, a page at a time.
+    private int ledger(Map<String, String> params, BatchCli.Output output, PrintStream err) throws IOException {
+        String type = params.getOrDefault("type", "all").toLowerCase();
+        if (!type.equals("all") && !type.equals("deposits") && !type.equals("payments")) {
+            err.println("Unknown type '" + type + "', use all, deposits or payments.");
+            return BatchCli.USAGE;
+        }
+        int offset;
+        int limit;
+        try {
+            offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+            limit = Integer.parseInt(params.getOrDefault("limit", Integer.toString(DEFAULT_LIMIT)));
+        } catch (NumberFormatException e) {
+            err.println("Invalid offset or limit, use whole numbers.");
+            return BatchCli.USAGE;
+        }
+        if (offset < 0 || limit < 0) {
+            err.println("Offset and limit can not be negative.");
+            return BatchCli.USAGE;
+        }
+
+        long started = Metrics.start();
+        LedgerStore store = book.getStore();
+        LedgerRenderer.RowSource all = book.getDateIndex().view().newestFirst();
+        IntList page = new IntList();
+        int matched = 0;
+        int position = 0;
+        for (; position < all.size() && page.size() < limit; position++) {
+            int row = all.rowAt(position);
+            long cents = store.getCents(row);
+            if (type.equals("all") || (type.equals("deposits") ? cents > 0 : cents < 0)) {
+                if (matched++ >= offset) {
+                    page.add(row);
+                }
+            }
+        }
+        Metrics.query(started, position, page.size());
+
+        LedgerRenderer.RowSource rows = LedgerRenderer.RowSource.of(page.toArray());
+        if (output.json) {
+            output.begin().field("type", type).field("offset", offset);
+            output.rows(rows).end();
+        } else {
+            output.rows(rows);
+        }
+        return BatchCli.OK;
+    }
+
+    /// a deposit or payment from form fields, the amount is positive either way as on the menu.
+    private int add(Map<String, String> params, boolean payment, BatchCli.Output output, PrintStream err) throws IOException {
+        String description = params.getOrDefault("description", "").trim();
+        String vendor = params.getOrDefault("vendor", "").trim();
+        if (description.isEmpty() || vendor.isEmpty()) {
+            err.println("Missing description or vendor.");
+            return BatchCli.USAGE;
+        }
+        if (!Ledger.fitsLine(description) || !Ledger.fitsLine(vendor)) {
+            err.println("Description and vendor can not contain '|' or line breaks.");
+            return BatchCli.USAGE;
+        }
+        long cents;
+        try {
+            cents = MoneyCodec.parseCents(params.getOrDefault("amount", ""));
+        } catch (NumberFormatException e) {
+            err.println("Invalid amount '" + params.get("amount") + "', use a positive number.");
+            return BatchCli.USAGE;
+        }
+        if (cents <= 0) {
+            err.println("Invalid amount '" + params.get("amount") + "', use a positive number.");
+            return BatchCli.USAGE;
+        }
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        LocalDate date;
+        LocalTime time;
+        try {
+            date = params.containsKey("date") ? LocalDate.parse(params.get("date")) : now.toLocalDate();
+            time = params.containsKey("time") ? LocalTime.parse(params.get("time")) : now.toLocalTime();
+        } catch (DateTimeParseException e) {
+            err.println("Invalid date or time, use the formats yyyy-MM-dd and HH:mm:ss. " + e.getMessage());
+            return BatchCli.USAGE;
+        }
+
+        int row = book.add(date, time, description, vendor, payment ? -cents : cents);
+        LedgerRenderer.RowSource rows = LedgerRenderer.RowSource.of(new int[]{row});
+        if (output.json) {
+            output.begin().field("added", 1);
+            output.rows(rows).end();
+        } else {
+            output.rows(rows);
+        }
+        return BatchCli.OK;
+    }
+
+    /// name=value pairs of a query string or form body, the last value of a repeated name wins.
+    private static Map<String, String> parseParams(String text) {
+        Map<String, String> params = new HashMap<>();
+        if (text == null || text.isEmpty()) {
+            return params;
+        }
+        for (String pair : text.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder body = new StringBuilder("{\"error\":");
+        BatchCli.Output.appendString(body, message);
+        body.append("}\n");
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Response body that sends the status line and headers, chunked, just before the first byte.
+     */
+    private static class ResponseBody extends OutputStream {
+        private final HttpExchange exchange;
+        private final int status;
+        private OutputStream out;
+        private boolean started;
+
+        ResponseBody(HttpExchange exchange, int status) {
+            this.exchange = exchange;
+            this.status = status;
+        }
+
+        private OutputStream start() throws IOException {
+            if (!started) {
+                exchange.sendResponseHeaders(status, 0);
+                out = exchange.getResponseBody();
+                started = true;
+            }
+            return out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            start().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                start().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (started) {
+                out.flush();
+            }
+        }
+    }
+}
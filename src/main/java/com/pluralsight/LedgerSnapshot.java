@@ -0,0 +1,246 @@
+package com.pluralsight;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary image of a LedgerStore used to skip re-parsing the CSV at startup.
+ * <p>
+ * Layout, big endian: header (magic, version, row count, CSV byte offset and line count covered,
+ * modification time of the CSV and CRC32C of the CSV bytes before the offset), the vendor and description
+ * dictionaries as length prefixed UTF-8 strings, fixed width 24 byte rows, and a CRC32 of everything before it.
+ * <p>
+ * The CSV stays the source of truth: a snapshot is only used when its checksum is valid and the CSV still holds
+ * the same bytes up to the recorded offset, lines after the offset are replayed from the CSV. A CSV of the recorded
+ * size and modification time is taken as unchanged, any other one has the covered bytes checksummed again.
+ */
+public class LedgerSnapshot {
+
+    private static final long MAGIC = 0x4654534E41500001L;
+    private static final int VERSION = 2;
+    private static final int ROW_BYTES = 24;
+    private static final int HEADER_BYTES = 8 + 4 + 4 + 8 + 8 + 8 + 8;
+    /// size of the CSV tail checksummed by guardChecksum.
+    private static final int GUARD_BYTES = 4096;
+    private static final int CHECKSUM_BUFFER = 1 << 20;
+
+    private LedgerSnapshot() {
+    }
+
+    /**
+     * Part of the CSV a restored snapshot already covers.
+     */
+    public static class Position {
+        private final long csvOffset;
+        private final long csvLines;
+
+        Position(long csvOffset, long csvLines) {
+            this.csvOffset = csvOffset;
+            this.csvLines = csvLines;
+        }
+
+        public long getCsvOffset() {
+            return csvOffset;
+        }
+
+        public long getCsvLines() {
+            return csvLines;
+        }
+    }
+
+    /**
+     * Write the store to a snapshot file, replacing any previous one atomically.
+     *
+     * @param snapshot  snapshot file to write.
+     * @param csv       CSV file the store was loaded from.
+     * @param store     rows to save.
+     * @param csvOffset CSV byte count the rows cover.
+     * @param csvLines  CSV line count the rows cover.
+     */
+    public static void write(Path snapshot, Path csv, LedgerStore store, long csvOffset, long csvLines) throws IOException {
+        write(snapshot, csv, store, csvOffset, csvLines, row -> true);
+    }
+
+    /**
+     * Write only the rows that came from the CSV, in store order, e.g. leaving out the new versions of edited
+     * rows, which are kept in the edit log instead.
+     *
+     * @param fromCsv whether a store row is a line of the CSV.
+     */
+    public static void write(Path snapshot, Path csv, LedgerStore store, long csvOffset, long csvLines,
+                             IntPredicate fromCsv) throws IOException {
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16))) {
+            int size = store.size();
+            int rows = 0;
+            for (int row = 0; row < size; row++) {
+                if (fromCsv.test(row)) {
+                    rows++;
+                }
+            }
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+            out.writeLong(csvOffset);
+            out.writeLong(csvLines);
+            out.writeLong(Files.getLastModifiedTime(csv).toMillis());
+            out.writeLong(prefixChecksum(csv, csvOffset));
+
+            writeDictionary(out, store.getVendors());
+            writeDictionary(out, store.getDescriptions());
+
+            for (int row = 0; row < size; row++) {
+                if (!fromCsv.test(row)) {
+                    continue;
+                }
+                out.writeInt(store.getEpochDay(row));
+                out.writeInt(store.getSecondOfDay(row));
+                out.writeLong(store.getCents(row));
+                out.writeInt(store.getVendorId(row));
+                out.writeInt(store.getDescriptionId(row));
+            }
+            out.flush();
+            /// the trailing checksum itself is not part of the checksum.
+            new DataOutputStream(file).writeLong(crc.getValue());
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restore a snapshot into an empty store through a memory mapped read.
+     * Nothing is added to the store unless the whole snapshot checks out.
+     *
+     * @return the CSV position to continue loading from.
+     * @throws IOException if the snapshot is missing, damaged or no longer matches the CSV.
+     */
+    public static Position read(Path snapshot, Path csv, LedgerStore store) throws IOException {
+        if (store.size() != 0) {
+            throw new IllegalStateException("snapshot can only be restored into an empty store");
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 8 || size > Integer.MAX_VALUE) {
+                throw new IOException("snapshot has an unsupported size " + size);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32 crc = new CRC32();
+            crc.update(map.duplicate().limit((int) size - 8));
+            if (crc.getValue() != map.getLong((int) size - 8)) {
+                throw new IOException("snapshot checksum mismatch");
+            }
+            if (map.getLong() != MAGIC || map.getInt() != VERSION) {
+                throw new IOException("not a snapshot of this version");
+            }
+            int rows = map.getInt();
+            long csvOffset = map.getLong();
+            long csvLines = map.getLong();
+            long csvModified = map.getLong();
+            long checksum = map.getLong();
+            long csvSize = Files.size(csv);
+            boolean untouched = csvSize == csvOffset && Files.getLastModifiedTime(csv).toMillis() == csvModified;
+            if (csvSize < csvOffset || !untouched && prefixChecksum(csv, csvOffset) != checksum) {
+                throw new IOException("transactions file changed since the snapshot was taken");
+            }
+
+            String[] vendors = readDictionary(map);
+            String[] descriptions = readDictionary(map);
+            if (map.remaining() != (long) rows * ROW_BYTES + 8) {
+                throw new IOException("snapshot row section has the wrong size");
+            }
+
+            for (String vendor : vendors) {
+                store.getVendors().encode(vendor);
+            }
+            for (String description : descriptions) {
+                store.getDescriptions().encode(description);
+            }
+            for (int row = 0; row < rows; row++) {
+                store.addEncoded(map.getInt(), map.getInt(), map.getLong(), map.getInt(), map.getInt());
+            }
+            return new Position(csvOffset, csvLines);
+        }
+    }
+
+    private static void writeDictionary(DataOutputStream out, StringDictionary dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            byte[] bytes = dictionary.decode(id).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer map) throws IOException {
+        int count = map.getInt();
+        if (count < 0 || count > map.remaining() / 4) {
+            throw new IOException("snapshot dictionary is damaged");
+        }
+        String[] values = new String[count];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = map.getInt();
+            if (length < 0 || length > map.remaining()) {
+                throw new IOException("snapshot dictionary is damaged");
+            }
+            if (length > scratch.length) {
+                scratch = new byte[length];
+            }
+            map.get(scratch, 0, length);
+            values[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    /// CRC32C of the CSV bytes before the offset, an edit anywhere in the part the snapshot covers changes it.
+    static long prefixChecksum(Path csv, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER);
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < offset) {
+                buffer.clear().limit((int) Math.min(CHECKSUM_BUFFER, offset - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                crc.update(buffer.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    /// CRC32 of the CSV bytes just before the offset, ties TransactionIds to the file.
+    static long guardChecksum(Path csv, long offset) throws IOException {
+        int length = (int) Math.min(GUARD_BYTES, offset);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset - length + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        buffer.flip();
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+}
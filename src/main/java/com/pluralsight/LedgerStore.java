@@ -0,0 +1,283 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * Column oriented transaction storage.
+ * Each row is kept as primitives: epoch day, second of day, amount in cents and dictionary ids for
+ * vendor and description. Transaction objects are only created when a row is shown.
+ * <p>
+ * Safe for one or more writers and any number of readers: appends take the store lock, readers take none.
+ * A row is written completely before the volatile size is raised, and rows never change once written,
+ * so a reader that reads size() once sees every row below it whole however many appends follow.
+ * <p>
+ * Rows are never removed either. An edit or delete marks the row deleted and an edit appends the new version,
+ * so row numbers stay valid. Deleted rows are also listed in the order they were deleted, which lets the
+ * indexes and rollups drop them when they next catch up.
+ */
+public class LedgerStore implements LedgerRows {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile int size;
+    /// volatile so a reader that picks up a grown array also sees the rows copied into it.
+    private volatile int[] epochDays = new int[INITIAL_CAPACITY];
+    private volatile int[] secondsOfDay = new int[INITIAL_CAPACITY];
+    private volatile long[] cents = new long[INITIAL_CAPACITY];
+    private volatile int[] vendorIds = new int[INITIAL_CAPACITY];
+    private volatile int[] descriptionIds = new int[INITIAL_CAPACITY];
+
+    /// one bit per row, set once the row is deleted; the deleted rows in order, published by deletedCount.
+    private volatile long[] deletedBits = new long[0];
+    private volatile int[] deletedRows = new int[16];
+    private volatile int deletedCount;
+
+    private final StringDictionary vendors = new StringDictionary();
+    private final StringDictionary descriptions = new StringDictionary();
+
+    /* ------------------------------------------------------------------
+       Append
+       ------------------------------------------------------------------ */
+
+    /**
+     * Append a row.
+     *
+     * @return row number of the new row.
+     */
+    public synchronized int add(int epochDay, int secondOfDay, String description, String vendor, long amountCents) {
+        return addEncoded(epochDay, secondOfDay, amountCents, vendors.encode(vendor), descriptions.encode(description));
+    }
+
+    /**
+     * Append a row whose vendor and description ids already come from this store's dictionaries,
+     * used when restoring a snapshot.
+     */
+    synchronized int addEncoded(int epochDay, int secondOfDay, long amountCents, int vendorId, int descriptionId) {
+        int row = size;
+        ensureCapacity(row + 1);
+        epochDays[row] = epochDay;
+        secondsOfDay[row] = secondOfDay;
+        cents[row] = amountCents;
+        vendorIds[row] = vendorId;
+        descriptionIds[row] = descriptionId;
+        /// publish the row only once all its columns are written.
+        size = row + 1;
+        return row;
+    }
+
+    public int add(LocalDate date, LocalTime time, String description, String vendor, long amountCents) {
+        return add((int) date.toEpochDay(), time.toSecondOfDay(), description, vendor, amountCents);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= epochDays.length) {
+            return;
+        }
+        int capacity = Math.max(needed, epochDays.length + (epochDays.length >> 1));
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        secondsOfDay = Arrays.copyOf(secondsOfDay, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        vendorIds = Arrays.copyOf(vendorIds, capacity);
+        descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+    }
+
+    /**
+     * Mark a row deleted. Its columns stay readable for whoever still holds its row number.
+     *
+     * @return false if it was deleted already.
+     */
+    public synchronized boolean delete(int row) {
+        if (row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " size " + size);
+        }
+        if (isDeleted(row)) {
+            return false;
+        }
+        long[] bits = deletedBits;
+        if (bits.length <= row >>> 6) {
+            bits = Arrays.copyOf(bits, Math.max((row >>> 6) + 1, epochDays.length >>> 6));
+        }
+        bits[row >>> 6] |= 1L << row;
+        int count = deletedCount;
+        int[] rows = deletedRows;
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, count * 2);
+        }
+        rows[count] = row;
+        deletedBits = bits;
+        deletedRows = rows;
+        /// publish the deletion once the bit and the list are written.
+        deletedCount = count + 1;
+        return true;
+    }
+
+    /* ------------------------------------------------------------------
+       Column access
+       ------------------------------------------------------------------ */
+
+    /**
+     * Rows published so far, rows below this number are complete and never change.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    @Override
+    public int getSecondOfDay(int row) {
+        return secondsOfDay[row];
+    }
+
+    @Override
+    public long getCents(int row) {
+        return cents[row];
+    }
+
+    @Override
+    public boolean isDeleted(int row) {
+        long[] bits = deletedBits;
+        int word = row >>> 6;
+        return word < bits.length && (bits[word] & 1L << row) != 0;
+    }
+
+    @Override
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * The index-th row deleted, for index below getDeletedCount().
+     */
+    public int getDeletedRow(int index) {
+        if (index >= deletedCount) {
+            throw new IndexOutOfBoundsException("index " + index + " deleted " + deletedCount);
+        }
+        return deletedRows[index];
+    }
+
+    public int getVendorId(int row) {
+        return vendorIds[row];
+    }
+
+    public int getDescriptionId(int row) {
+        return descriptionIds[row];
+    }
+
+    @Override
+    public String getVendor(int row) {
+        return vendors.decode(vendorIds[row]);
+    }
+
+    @Override
+    public String getDescription(int row) {
+        return descriptions.decode(descriptionIds[row]);
+    }
+
+    public StringDictionary getVendors() {
+        return vendors;
+    }
+
+    public StringDictionary getDescriptions() {
+        return descriptions;
+    }
+
+    /**
+     * Build a Transaction for one row, used when the row is displayed.
+     */
+    public Transaction get(int row) {
+        return new Transaction(LocalDate.ofEpochDay(epochDays[row]), LocalTime.ofSecondOfDay(secondsOfDay[row]),
+                getDescription(row), getVendor(row), cents[row] / 100.0);
+    }
+
+    @Override
+    public String toCsvLine(int row) {
+        StringBuilder sb = new StringBuilder(64);
+        appendCsvLine(sb, row);
+        return sb.toString();
+    }
+
+    @Override
+    public void appendCsvLine(StringBuilder sb, int row) {
+        LedgerRenderer.appendDate(sb, epochDays[row]);
+        sb.append('|');
+        LedgerRenderer.appendTime(sb, secondsOfDay[row]);
+        sb.append('|').append(getDescription(row)).append('|').append(getVendor(row)).append('|');
+        MoneyCodec.appendCents(sb, cents[row]);
+    }
+
+    /* ------------------------------------------------------------------
+       Ordering
+       ------------------------------------------------------------------ */
+
+    @Override
+    public long dateTimeKey(int row) {
+        return epochDays[row] * 86_400L + secondsOfDay[row];
+    }
+
+    /**
+     * Reorder the given row numbers newest to oldest in place, rows with the same date and time last added first.
+     */
+    public void sortNewestFirst(int[] rows) {
+        long[] keys = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = dateTimeKey(rows[i]);
+        }
+        /// sort oldest first and reverse: index lists come in row order, which for a dated ledger is one pass.
+        sortRows(rows, keys, 0, rows.length);
+        for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+        }
+    }
+
+    /**
+     * Stable sort of rows[from, to) by ascending keys, moving both arrays together.
+     * Input that is already in order costs a single pass.
+     */
+    static void sortRows(int[] rows, long[] keys, int from, int to) {
+        mergeSort(rows, keys, new int[to - from], new long[to - from], from, from, to);
+    }
+
+    /// stable merge sort of rows by ascending keys, scratch index 0 stands for position offset.
+    private static void mergeSort(int[] rows, long[] keys, int[] rowTmp, long[] keyTmp, int offset, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(rows, keys, rowTmp, keyTmp, offset, from, mid);
+        mergeSort(rows, keys, rowTmp, keyTmp, offset, mid, to);
+        if (keys[mid - 1] <= keys[mid]) {
+            return;
+        }
+        int left = from;
+        int right = mid;
+        int out = from - offset;
+        while (left < mid && right < to) {
+            if (keys[right] < keys[left]) {
+                rowTmp[out] = rows[right];
+                keyTmp[out++] = keys[right++];
+            } else {
+                rowTmp[out] = rows[left];
+                keyTmp[out++] = keys[left++];
+            }
+        }
+        while (left < mid) {
+            rowTmp[out] = rows[left];
+            keyTmp[out++] = keys[left++];
+        }
+        while (right < to) {
+            rowTmp[out] = rows[right];
+            keyTmp[out++] = keys[right++];
+        }
+        System.arraycopy(rowTmp, from - offset, rows, from, to - from);
+        System.arraycopy(keyTmp, from - offset, keys, from, to - from);
+    }
+}
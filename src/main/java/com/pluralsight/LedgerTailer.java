@@ -0,0 +1,116 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Background thread that keeps a Ledger current while other programs append to its transactions file.
+ * It wakes up on change events for the file's directory from a WatchService, and at least every pollMillis
+ * since events can be late or missing (network drives, file systems without notification), then calls
+ * Ledger.tail, which reads only what was added. Whatever a pass finds is handed to the listener.
+ */
+public class LedgerTailer implements Closeable {
+
+    private final Ledger ledger;
+    private final long pollMillis;
+    private final Consumer<Ledger.TailReport> listener;
+    private final Thread thread;
+    /// null when the directory can not be watched, the thread then only polls.
+    private final WatchService watcher;
+    private volatile boolean running = true;
+
+    /**
+     * Start following, the ledger must have been loaded and startTail called.
+     *
+     * @param pollMillis longest wait between two passes.
+     * @param listener   called on the tailer thread with every pass that found something.
+     */
+    public LedgerTailer(Ledger ledger, long pollMillis, Consumer<Ledger.TailReport> listener) {
+        this.ledger = ledger;
+        this.pollMillis = Math.max(10, pollMillis);
+        this.listener = listener;
+        this.watcher = watch(ledger.getCsv().toAbsolutePath().getParent());
+
+        thread = new Thread(this::run, "ledger-tail");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static WatchService watch(Path dir) {
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                awaitChange();
+                Ledger.TailReport report;
+                try {
+                    report = ledger.tail();
+                } catch (IOException e) {
+                    report = new Ledger.TailReport(0, List.of(), "Error reading " + ledger.getCsv() + ". " + e, false);
+                }
+                if (!report.isEmpty()) {
+                    listener.accept(report);
+                }
+                if (report.isStopped()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            /// closed.
+        }
+    }
+
+    /// any event in the directory triggers a pass, a pass over an unchanged file only checks its size.
+    private void awaitChange() throws InterruptedException {
+        if (watcher == null) {
+            synchronized (this) {
+                if (running) {
+                    wait(pollMillis);
+                }
+            }
+            return;
+        }
+        WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    /**
+     * Stop the thread, call before closing the ledger. The thread is woken rather than interrupted, an interrupt
+     * during a read would close the ledger's channel on the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        if (watcher != null) {
+            watcher.close();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
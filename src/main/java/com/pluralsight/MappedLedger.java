@@ -0,0 +1,317 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The transactions file memory-mapped and read in place, for lazy mode.
+ * Opening only records where each line starts, one long per row, after checking that the line has five
+ * fields with a valid date, time and amount. Date and time sit at fixed positions at the start of a line,
+ * so the date index reads them straight from the mapping; description, vendor and amount are decoded
+ * when a row is filtered or shown. Heap use is the offset index, not the rows.
+ * <p>
+ * Files over 1 GB are mapped in several regions, each overlapping the next by MAX_LINE bytes so that a
+ * line starting in one region can be read from it whole; longer lines are rejected.
+ * Like LedgerStore, one thread appends (refresh) and readers need no lock.
+ */
+public class MappedLedger implements LedgerRows, Closeable {
+
+    private static final long REGION_SIZE = 1L << 30;
+    /// lines this long or longer are rejected.
+    static final int MAX_LINE = 64 * 1024;
+    private static final int WINDOW_SIZE = 4 * MAX_LINE;
+    /// "yyyy-MM-dd|HH:mm:ss" at the start of every indexed line.
+    private static final int DATE_TIME_LENGTH = 19;
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    private volatile long[] offsets = new long[1024];
+    private volatile int size;
+    /// file position after the last indexed line, and the number of lines up to it.
+    private long indexedEnd;
+    private long lineCount;
+    private CsvLoader.Result openResult;
+
+    private MappedLedger(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * Map the file and index its lines.
+     *
+     * @return the ledger, with the lines that were rejected in getOpenResult.
+     */
+    public static MappedLedger open(Path path) throws IOException {
+        MappedLedger ledger = new MappedLedger(path);
+        try {
+            ledger.openResult = ledger.refresh(true);
+        } catch (IOException e) {
+            ledger.close();
+            throw e;
+        }
+        return ledger;
+    }
+
+    /**
+     * Lines rejected while opening, in the same form as a CsvLoader load.
+     */
+    public CsvLoader.Result getOpenResult() {
+        return openResult;
+    }
+
+    /**
+     * Index the lines appended to the file since the last call, e.g. after the journal wrote a new row.
+     * A last line without line break may still be being written, it is left for the next call.
+     *
+     * @return rows added and lines rejected, the line and byte counts cover the new part only.
+     */
+    public CsvLoader.Result refresh() throws IOException {
+        return refresh(false);
+    }
+
+    /**
+     * Part of the file indexed so far, in bytes.
+     */
+    public synchronized long getIndexedEnd() {
+        return indexedEnd;
+    }
+
+    /// partialLast: index a last line without line break too, as a load does.
+    private synchronized CsvLoader.Result refresh(boolean partialLast) throws IOException {
+        long fileSize = channel.size();
+        long end = fileSize;
+        long from = indexedEnd;
+        mapTo(fileSize);
+        if (from == 0) {
+            from = skipBom(fileSize);
+        }
+
+        List<String> errors = new ArrayList<>();
+        int rowCount = 0;
+        long firstLine = lineCount;
+        /// lines are scanned in bulk copies of the mapping, a window always holds at least one whole line.
+        byte[] window = new byte[WINDOW_SIZE];
+        long position = from;
+        while (position < end) {
+            int length = fill(window, position, fileSize);
+            boolean atEnd = position + length == fileSize;
+            int lineStart = 0;
+            long resume = -1;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && window[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                boolean cut = lineEnd == length && !atEnd;
+                if (cut && lineEnd - lineStart < MAX_LINE) {
+                    /// the line continues past the window, read again from its start.
+                    break;
+                }
+                if (lineEnd == length && atEnd && !partialLast && lineEnd - lineStart < MAX_LINE) {
+                    /// a last line without line break may still be being written.
+                    end = position + lineStart;
+                    break;
+                }
+                lineCount++;
+                if (lineEnd - lineStart >= MAX_LINE) {
+                    errors.add("line " + lineCount + ": longer than " + MAX_LINE + " bytes");
+                    if (cut) {
+                        resume = skipLine(position + lineEnd, fileSize);
+                        break;
+                    }
+                } else {
+                    int contentEnd = lineEnd > lineStart && window[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                    /// blank lines are ignored, as in CsvLoader.
+                    if (contentEnd > lineStart) {
+                        try {
+                            check(window, lineStart, contentEnd);
+                            append(position + lineStart);
+                            rowCount++;
+                        } catch (IllegalArgumentException e) {
+                            errors.add("line " + lineCount + ": " + e.getMessage());
+                        }
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            position = resume >= 0 ? resume : Math.min(position + lineStart, fileSize);
+        }
+        indexedEnd = end;
+        return new CsvLoader.Result(rowCount, errors, lineCount - firstLine, end - from);
+    }
+
+    /// copy as much of the file from position as fits in the window and in the region holding position.
+    private int fill(byte[] window, long position, long fileSize) {
+        MappedByteBuffer region = regions[(int) (position / REGION_SIZE)];
+        int start = (int) (position - position / REGION_SIZE * REGION_SIZE);
+        int length = (int) Math.min(Math.min(window.length, fileSize - position), region.limit() - start);
+        region.get(start, window, 0, length);
+        return length;
+    }
+
+    /// map the regions covering [0, fileSize), remapping the last one if the file grew.
+    private void mapTo(long fileSize) throws IOException {
+        int count = (int) ((fileSize + REGION_SIZE - 1) / REGION_SIZE);
+        MappedByteBuffer[] mapped = Arrays.copyOf(regions, Math.max(count, regions.length));
+        for (int i = 0; i < count; i++) {
+            long start = i * REGION_SIZE;
+            long length = Math.min(fileSize - start, REGION_SIZE + MAX_LINE);
+            if (mapped[i] == null || mapped[i].capacity() < length) {
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        }
+        regions = mapped;
+    }
+
+    private long skipBom(long fileSize) {
+        if (fileSize >= 3 && (regions[0].get(0) & 0xFF) == 0xEF && (regions[0].get(1) & 0xFF) == 0xBB
+                && (regions[0].get(2) & 0xFF) == 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+
+    /// position after the next line break at or after position, for skipping an overlong line.
+    private long skipLine(long position, long fileSize) {
+        while (position < fileSize) {
+            MappedByteBuffer region = regions[(int) (position / REGION_SIZE)];
+            if (region.get((int) (position - position / REGION_SIZE * REGION_SIZE)) == '\n') {
+                return position + 1;
+            }
+            position++;
+        }
+        return fileSize;
+    }
+
+    /// same checks as CsvLoader, without keeping anything but the line offset.
+    private static void check(byte[] buf, int start, int end) {
+        int[] cuts = cuts(buf, start, end);
+        CsvLoader.parseEpochDay(buf, start, cuts[0]);
+        CsvLoader.parseSecondOfDay(buf, cuts[0] + 1, cuts[1]);
+        CsvLoader.parseAmount(buf, cuts[3] + 1, end);
+    }
+
+    /// positions of the four field separators.
+    private static int[] cuts(byte[] buf, int start, int end) {
+        int[] cuts = new int[4];
+        int found = 0;
+        for (int i = start; i < end && found < 4; i++) {
+            if (buf[i] == '|') {
+                cuts[found++] = i;
+            }
+        }
+        if (found < 4) {
+            throw new IllegalArgumentException("expected 5 fields separated by '|' but found " + (found + 1));
+        }
+        return cuts;
+    }
+
+    private void append(long offset) {
+        int row = size;
+        if (row == offsets.length) {
+            offsets = Arrays.copyOf(offsets, row + (row >> 1));
+        }
+        offsets[row] = offset;
+        /// publish the row only once its offset is written.
+        size = row + 1;
+    }
+
+    /* ------------------------------------------------------------------
+       Row access
+       ------------------------------------------------------------------ */
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Byte offset of a row's line in the file.
+     */
+    public long getOffset(int row) {
+        if (row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " size " + size);
+        }
+        return offsets[row];
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        byte[] dateTime = dateTime(row);
+        return CsvLoader.parseEpochDay(dateTime, 0, 10);
+    }
+
+    @Override
+    public int getSecondOfDay(int row) {
+        byte[] dateTime = dateTime(row);
+        return CsvLoader.parseSecondOfDay(dateTime, 11, DATE_TIME_LENGTH);
+    }
+
+    @Override
+    public long dateTimeKey(int row) {
+        byte[] dateTime = dateTime(row);
+        return CsvLoader.parseEpochDay(dateTime, 0, 10) * 86_400L + CsvLoader.parseSecondOfDay(dateTime, 11, DATE_TIME_LENGTH);
+    }
+
+    @Override
+    public long getCents(int row) {
+        byte[] line = line(row);
+        int[] cuts = cuts(line, 0, line.length);
+        return CsvLoader.parseAmount(line, cuts[3] + 1, line.length);
+    }
+
+    @Override
+    public String getDescription(int row) {
+        byte[] line = line(row);
+        int[] cuts = cuts(line, 0, line.length);
+        return new String(line, cuts[1] + 1, cuts[2] - cuts[1] - 1, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getVendor(int row) {
+        byte[] line = line(row);
+        int[] cuts = cuts(line, 0, line.length);
+        return new String(line, cuts[2] + 1, cuts[3] - cuts[2] - 1, StandardCharsets.UTF_8);
+    }
+
+    /// the fixed width date and time at the start of the line, nothing else is read.
+    private byte[] dateTime(int row) {
+        long offset = getOffset(row);
+        byte[] bytes = new byte[DATE_TIME_LENGTH];
+        regions[(int) (offset / REGION_SIZE)].get((int) (offset - offset / REGION_SIZE * REGION_SIZE), bytes);
+        return bytes;
+    }
+
+    /// the whole line without its line break, copied out of the mapping.
+    private byte[] line(int row) {
+        long offset = getOffset(row);
+        MappedByteBuffer region = regions[(int) (offset / REGION_SIZE)];
+        int start = (int) (offset - offset / REGION_SIZE * REGION_SIZE);
+        int end = start;
+        while (end < region.limit() && region.get(end) != '\n') {
+            end++;
+        }
+        if (end > start && region.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] line = new byte[end - start];
+        region.get(start, line);
+        return line;
+    }
+
+    /**
+     * Close the file, the mapped regions are released once they are no longer referenced.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,311 @@
+package com.pluralsight;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process wide counters and latency histograms for the hot paths: loading, appending (and the journal commits
+ * behind it), queries, the report cache and rendering.
+ * Shown by the hidden "S" option of the home screen and over JMX.
+ * <p>
+ * Callers take a start time with start() and hand it back when done. Counters are LongAdders and histograms
+ * lock free, so threads appending and querying at the same time do not contend on them.
+ * -Dtracker.metrics=false turns everything off: start() then skips the clock and recording returns at once,
+ * which the JIT folds away since the flag is a constant.
+ */
+public final class Metrics implements MetricsMBean {
+
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("tracker.metrics"));
+    static final String OBJECT_NAME = "com.pluralsight:type=Metrics";
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final LatencyHistogram loadTime = new LatencyHistogram();
+    private final LongAdder loadRows = new LongAdder();
+    private final LongAdder loadBytes = new LongAdder();
+    private final LongAdder loadErrors = new LongAdder();
+
+    private final LatencyHistogram appendTime = new LatencyHistogram();
+    private final LongAdder appendRows = new LongAdder();
+    private final LongAdder journalCommits = new LongAdder();
+    private final LongAdder journalForces = new LongAdder();
+
+    private final LatencyHistogram queryTime = new LatencyHistogram();
+    private final LongAdder queryScanned = new LongAdder();
+    private final LongAdder queryMatched = new LongAdder();
+
+    private final LongAdder reportCacheHits = new LongAdder();
+    private final LongAdder reportCacheMisses = new LongAdder();
+
+    private final LatencyHistogram renderTime = new LatencyHistogram();
+    private final LongAdder renderRows = new LongAdder();
+
+    private Metrics() {
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the MBean with the platform MBean server, does nothing if metrics are off or it is already there.
+     */
+    public static void register() throws JMException {
+        if (!ENABLED) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(INSTANCE, name);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Recording
+       ------------------------------------------------------------------ */
+
+    /**
+     * Start time to pass to one of the recording methods, 0 when metrics are off.
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * A load finished: rows restored or parsed, bytes parsed and lines rejected.
+     */
+    static void load(long start, long rows, long bytes, int errors) {
+        if (!ENABLED) {
+            return;
+        }
+        INSTANCE.loadTime.record(System.nanoTime() - start);
+        INSTANCE.loadRows.add(rows);
+        INSTANCE.loadBytes.add(bytes);
+        INSTANCE.loadErrors.add(errors);
+    }
+
+    /**
+     * An append call returned, its rows are durable as far as the sync policy promises. An import is one call.
+     */
+    static void append(long start, int rows) {
+        if (!ENABLED) {
+            return;
+        }
+        INSTANCE.appendTime.record(System.nanoTime() - start);
+        INSTANCE.appendRows.add(rows);
+    }
+
+    /**
+     * The journal wrote one batch, and forced it to disk if forced is set.
+     */
+    static void journalCommit(boolean forced) {
+        if (!ENABLED) {
+            return;
+        }
+        INSTANCE.journalCommits.increment();
+        if (forced) {
+            INSTANCE.journalForces.increment();
+        }
+    }
+
+    /**
+     * A query or filter visited scanned rows and kept matched of them.
+     */
+    static void query(long start, long scanned, long matched) {
+        if (!ENABLED) {
+            return;
+        }
+        INSTANCE.queryTime.record(System.nanoTime() - start);
+        INSTANCE.queryScanned.add(scanned);
+        INSTANCE.queryMatched.add(matched);
+    }
+
+    /**
+     * A report was looked up in the ReportCache.
+     */
+    static void reportCache(boolean hit) {
+        if (!ENABLED) {
+            return;
+        }
+        (hit ? INSTANCE.reportCacheHits : INSTANCE.reportCacheMisses).increment();
+    }
+
+    /**
+     * Rows were formatted and written to the console.
+     */
+    static void render(long start, int rows) {
+        if (!ENABLED) {
+            return;
+        }
+        INSTANCE.renderTime.record(System.nanoTime() - start);
+        INSTANCE.renderRows.add(rows);
+    }
+
+    /* ------------------------------------------------------------------
+       Reading
+       ------------------------------------------------------------------ */
+
+    /**
+     * One line per area for the stats screen, durations in milliseconds.
+     */
+    public String summary() {
+        if (!ENABLED) {
+            return "Metrics are off (-Dtracker.metrics=false).";
+        }
+        return String.format("Load:   %d runs, %d rows, %.1f MB, %d rejected lines, %d rows/s, %.1f MB/s%n",
+                getLoadCount(), getLoadRows(), loadBytes.sum() / 1e6, getLoadErrors(),
+                getLoadRowsPerSecond(), getLoadBytesPerSecond() / 1e6)
+                + String.format("Append: %d calls, %d rows, %s, %d journal commits, %d forced to disk%n",
+                getAppendCount(), getAppendRows(), latency(appendTime), getJournalCommits(), getJournalForces())
+                + String.format("Query:  %d runs, %d rows scanned, %d matched, %s%n",
+                getQueryCount(), getQueryRowsScanned(), getQueryRowsMatched(), latency(queryTime))
+                + String.format("Report cache: %d hits, %d misses%n", getReportCacheHits(), getReportCacheMisses())
+                + String.format("Render: %d pages, %d rows, %s",
+                getRenderCount(), getRenderRows(), latency(renderTime));
+    }
+
+    private static String latency(LatencyHistogram histogram) {
+        return String.format("p50 %.3f ms, p99 %.3f ms, max %.3f ms", histogram.percentile(0.5) / 1e6,
+                histogram.percentile(0.99) / 1e6, histogram.getMaxNanos() / 1e6);
+    }
+
+    private static long perSecond(long amount, long nanos) {
+        return nanos == 0 ? 0 : (long) (amount * 1e9 / nanos);
+    }
+
+    @Override
+    public long getLoadCount() {
+        return loadTime.getCount();
+    }
+
+    @Override
+    public long getLoadRows() {
+        return loadRows.sum();
+    }
+
+    @Override
+    public long getLoadBytes() {
+        return loadBytes.sum();
+    }
+
+    @Override
+    public long getLoadErrors() {
+        return loadErrors.sum();
+    }
+
+    @Override
+    public long getLoadRowsPerSecond() {
+        return perSecond(loadRows.sum(), loadTime.getTotalNanos());
+    }
+
+    @Override
+    public long getLoadBytesPerSecond() {
+        return perSecond(loadBytes.sum(), loadTime.getTotalNanos());
+    }
+
+    @Override
+    public long getAppendCount() {
+        return appendTime.getCount();
+    }
+
+    @Override
+    public long getAppendRows() {
+        return appendRows.sum();
+    }
+
+    @Override
+    public long getAppendP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(appendTime.percentile(0.5));
+    }
+
+    @Override
+    public long getAppendP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(appendTime.percentile(0.99));
+    }
+
+    @Override
+    public long getAppendMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(appendTime.getMaxNanos());
+    }
+
+    @Override
+    public long getJournalCommits() {
+        return journalCommits.sum();
+    }
+
+    @Override
+    public long getJournalForces() {
+        return journalForces.sum();
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queryTime.getCount();
+    }
+
+    @Override
+    public long getQueryRowsScanned() {
+        return queryScanned.sum();
+    }
+
+    @Override
+    public long getQueryRowsMatched() {
+        return queryMatched.sum();
+    }
+
+    @Override
+    public long getQueryP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryTime.percentile(0.5));
+    }
+
+    @Override
+    public long getQueryP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryTime.percentile(0.99));
+    }
+
+    @Override
+    public long getQueryMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryTime.getMaxNanos());
+    }
+
+    @Override
+    public long getReportCacheHits() {
+        return reportCacheHits.sum();
+    }
+
+    @Override
+    public long getReportCacheMisses() {
+        return reportCacheMisses.sum();
+    }
+
+    @Override
+    public long getRenderCount() {
+        return renderTime.getCount();
+    }
+
+    @Override
+    public long getRenderRows() {
+        return renderRows.sum();
+    }
+
+    @Override
+    public long getRenderP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(renderTime.percentile(0.99));
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : new LatencyHistogram[]{loadTime, appendTime, queryTime, renderTime}) {
+            histogram.reset();
+        }
+        for (LongAdder adder : new LongAdder[]{loadRows, loadBytes, loadErrors, appendRows, journalCommits,
+                journalForces, queryScanned, queryMatched, reportCacheHits, reportCacheMisses, renderRows}) {
+            adder.reset();
+        }
+    }
+}
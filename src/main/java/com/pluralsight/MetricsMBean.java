@@ -0,0 +1,60 @@
+package com.pluralsight;
+
+/**
+ * JMX view of Metrics, registered as "com.pluralsight:type=Metrics". Durations are in microseconds.
+ */
+public interface MetricsMBean {
+
+    long getLoadCount();
+
+    long getLoadRows();
+
+    long getLoadBytes();
+
+    long getLoadErrors();
+
+    long getLoadRowsPerSecond();
+
+    long getLoadBytesPerSecond();
+
+    long getAppendCount();
+
+    long getAppendRows();
+
+    long getAppendP50Micros();
+
+    long getAppendP99Micros();
+
+    long getAppendMaxMicros();
+
+    long getJournalCommits();
+
+    long getJournalForces();
+
+    long getQueryCount();
+
+    long getQueryRowsScanned();
+
+    long getQueryRowsMatched();
+
+    long getQueryP50Micros();
+
+    long getQueryP99Micros();
+
+    long getQueryMaxMicros();
+
+    long getReportCacheHits();
+
+    long getReportCacheMisses();
+
+    long getRenderCount();
+
+    long getRenderRows();
+
+    long getRenderP99Micros();
+
+    /**
+     * Start counting from zero again.
+     */
+    void reset();
+}
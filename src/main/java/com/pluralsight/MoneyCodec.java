@@ -0,0 +1,110 @@
+package com.pluralsight;
+
+/**
+ * Fixed point money: amounts are whole cents in a long, never a double.
+ * Parsing and formatting work on the characters directly, so the CSV amount field is decoded
+ * without creating a String and sums stay exact however many rows are added.
+ */
+public class MoneyCodec {
+
+    private MoneyCodec() {
+    }
+
+    /**
+     * Parse an ASCII decimal amount such as "-89.50", "1500" or " 12.5 " into cents.
+     * A third fraction digit rounds half away from zero, further digits are ignored.
+     *
+     * @throws NumberFormatException if the bytes are not a decimal number or do not fit.
+     */
+    public static long parseCents(byte[] buf, int start, int end) {
+        int from = start;
+        int to = end;
+        while (from < to && buf[from] == ' ') {
+            from++;
+        }
+        while (to > from && buf[to - 1] == ' ') {
+            to--;
+        }
+        boolean negative = false;
+        if (from < to && (buf[from] == '-' || buf[from] == '+')) {
+            negative = buf[from] == '-';
+            from++;
+        }
+
+        long whole = 0;
+        int digits = 0;
+        int i = from;
+        for (; i < to && buf[i] != '.'; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9 || whole > (Long.MAX_VALUE / 100 - d) / 10) {
+                throw new NumberFormatException("invalid amount");
+            }
+            whole = whole * 10 + d;
+            digits++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < to) {
+            for (i++; i < to; i++) {
+                int d = buf[i] - '0';
+                if (d < 0 || d > 9) {
+                    throw new NumberFormatException("invalid amount");
+                }
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + d;
+                } else if (fractionDigits == 2) {
+                    roundUp = d >= 5;
+                }
+                fractionDigits++;
+            }
+        }
+        if (digits + fractionDigits == 0) {
+            throw new NumberFormatException("invalid amount");
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+
+        long cents = whole * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Parse a typed amount into cents, same rules as the byte version.
+     *
+     * @throws NumberFormatException if the text is not a decimal number.
+     */
+    public static long parseCents(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = text.charAt(i);
+            /// anything outside ASCII can not be part of a number, map it to a byte the parser rejects.
+            bytes[i] = c < 128 ? (byte) c : (byte) '?';
+        }
+        return parseCents(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Append cents as a decimal amount with two fraction digits, e.g. -1234 as -12.34.
+     */
+    public static void appendCents(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        sb.append(abs / 100).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    public static String format(long cents) {
+        StringBuilder sb = new StringBuilder(24);
+        appendCents(sb, cents);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,305 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Partitioned layout of a ledger: a directory with one transactions file per month ("2024-03.csv", same line
+ * format as transactions.csv) and a manifest listing each segment's date range, row count, totals and size.
+ * <p>
+ * Manifest lines are "segment|first date|last date|rows|deposit cents|payment cents|bytes" after a header.
+ * The segments are the source of truth: a segment whose size no longer matches the manifest, or one the
+ * manifest does not list, is rescanned.
+ */
+public class PartitionManifest {
+
+    static final String FILE_NAME = "manifest.csv";
+    private static final String HEADER = "segment|first|last|rows|depositCents|paymentCents|bytes";
+    private static final String SEGMENT_SUFFIX = ".csv";
+
+    /**
+     * One month of the ledger.
+     */
+    public static class Segment {
+        private final YearMonth month;
+        private int firstDay = Integer.MAX_VALUE;
+        private int lastDay = Integer.MIN_VALUE;
+        private long rows;
+        private long depositCents;
+        private long paymentCents;
+        /// segment size the numbers above describe, -1 when they have to be recomputed.
+        private long bytes = -1;
+
+        Segment(YearMonth month) {
+            this.month = month;
+        }
+
+        void add(int epochDay, long cents) {
+            firstDay = Math.min(firstDay, epochDay);
+            lastDay = Math.max(lastDay, epochDay);
+            rows++;
+            if (cents > 0) {
+                depositCents += cents;
+            } else {
+                paymentCents += cents;
+            }
+        }
+
+        void clear() {
+            firstDay = Integer.MAX_VALUE;
+            lastDay = Integer.MIN_VALUE;
+            rows = 0;
+            depositCents = 0;
+            paymentCents = 0;
+        }
+
+        public YearMonth getMonth() {
+            return month;
+        }
+
+        public String getFileName() {
+            return month + SEGMENT_SUFFIX;
+        }
+
+        /// first and last transaction date, the month bounds while the segment is empty.
+        public LocalDate getFirstDate() {
+            return rows == 0 ? month.atDay(1) : LocalDate.ofEpochDay(firstDay);
+        }
+
+        public LocalDate getLastDate() {
+            return rows == 0 ? month.atEndOfMonth() : LocalDate.ofEpochDay(lastDay);
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getNetCents() {
+            return depositCents + paymentCents;
+        }
+
+        public long getDepositCents() {
+            return depositCents;
+        }
+
+        public long getPaymentCents() {
+            return paymentCents;
+        }
+    }
+
+    private final Path dir;
+    private final TreeMap<YearMonth, Segment> segments = new TreeMap<>();
+
+    private PartitionManifest(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Whether the directory holds a partitioned ledger.
+     */
+    public static boolean exists(Path dir) {
+        return Files.isRegularFile(dir.resolve(FILE_NAME));
+    }
+
+    /**
+     * Read the manifest and pick up month files it does not list yet.
+     */
+    public static PartitionManifest read(Path dir) throws IOException {
+        PartitionManifest manifest = new PartitionManifest(dir);
+        Path file = dir.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (int i = 1; i < lines.size(); i++) {
+                String[] fields = lines.get(i).split("\\|");
+                if (fields.length != 7) {
+                    continue;
+                }
+                try {
+                    Segment segment = manifest.segment(YearMonth.parse(fields[0].replace(SEGMENT_SUFFIX, "")));
+                    segment.firstDay = (int) LocalDate.parse(fields[1]).toEpochDay();
+                    segment.lastDay = (int) LocalDate.parse(fields[2]).toEpochDay();
+                    segment.rows = Long.parseLong(fields[3]);
+                    segment.depositCents = Long.parseLong(fields[4]);
+                    segment.paymentCents = Long.parseLong(fields[5]);
+                    segment.bytes = Long.parseLong(fields[6]);
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    /// a damaged line only costs a rescan of that segment.
+                }
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+            for (Path segmentFile : files) {
+                String name = segmentFile.getFileName().toString();
+                if (name.equals(FILE_NAME)) {
+                    continue;
+                }
+                try {
+                    manifest.segment(YearMonth.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (DateTimeParseException e) {
+                    /// not a month segment, leave it alone.
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Split a single transactions file into month segments and write the manifest.
+     * The rows of a month keep their order from the file, lines that do not parse are reported and left out.
+     *
+     * @return the load result of the source file.
+     */
+    public static CsvLoader.Result migrate(Path csv, Path dir) throws IOException {
+        if (exists(dir)) {
+            throw new IOException(dir + " already holds a partitioned ledger");
+        }
+        LedgerStore store = new LedgerStore();
+        CsvLoader.Result result = CsvLoader.load(csv, store);
+        Files.createDirectories(dir);
+
+        PartitionManifest manifest = new PartitionManifest(dir);
+        Map<YearMonth, BufferedWriter> writers = new HashMap<>();
+        StringBuilder line = new StringBuilder(96);
+        try {
+            for (int row = 0; row < store.size(); row++) {
+                Segment segment = manifest.segment(YearMonth.from(LocalDate.ofEpochDay(store.getEpochDay(row))));
+                segment.add(store.getEpochDay(row), store.getCents(row));
+                BufferedWriter writer = writers.get(segment.month);
+                if (writer == null) {
+                    writer = Files.newBufferedWriter(dir.resolve(segment.getFileName()), StandardCharsets.UTF_8);
+                    writers.put(segment.month, writer);
+                }
+                line.setLength(0);
+                store.appendCsvLine(line, row);
+                writer.append(line).append('\n');
+            }
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+        for (Segment segment : manifest.segments()) {
+            manifest.recordSize(segment);
+        }
+        manifest.write();
+        return result;
+    }
+
+    /**
+     * The segment of a month, created empty if there is none.
+     */
+    Segment segment(YearMonth month) {
+        return segments.computeIfAbsent(month, Segment::new);
+    }
+
+    public Collection<Segment> segments() {
+        return segments.values();
+    }
+
+    /**
+     * Segments whose month overlaps start..end inclusive, oldest first.
+     *
+     * @param start first day, null for no lower bound.
+     * @param end   last day, null for no upper bound.
+     */
+    public List<Segment> overlapping(LocalDate start, LocalDate end) {
+        NavigableMap<YearMonth, Segment> range = segments;
+        if (start != null) {
+            range = range.tailMap(YearMonth.from(start), true);
+        }
+        if (end != null) {
+            range = range.headMap(YearMonth.from(end), true);
+        }
+        return new ArrayList<>(range.values());
+    }
+
+    /**
+     * Segments of the months before the month of start, oldest first; none without a start.
+     */
+    public List<Segment> before(LocalDate start) {
+        return start == null ? List.of() : new ArrayList<>(segments.headMap(YearMonth.from(start), false).values());
+    }
+
+    public Path file(Segment segment) {
+        return dir.resolve(segment.getFileName());
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Whether the manifest numbers still describe the segment file.
+     */
+    boolean isCurrent(Segment segment) throws IOException {
+        Path file = file(segment);
+        return segment.bytes >= 0 && Files.exists(file) && Files.size(file) == segment.bytes;
+    }
+
+    /**
+     * Recompute the numbers of a segment by parsing it, used for segments that were not loaded.
+     */
+    void rescan(Segment segment) throws IOException {
+        LedgerStore store = new LedgerStore();
+        Path file = file(segment);
+        if (Files.exists(file)) {
+            CsvLoader.load(file, store);
+        }
+        recount(segment, store, 0, store.size());
+    }
+
+    /**
+     * Mark the segment numbers as describing the file as it is now, after rows were appended to both.
+     */
+    void recordSize(Segment segment) throws IOException {
+        Path file = file(segment);
+        segment.bytes = Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    /**
+     * Recompute the numbers of a segment from the store rows [from, to) it was loaded into.
+     */
+    void recount(Segment segment, LedgerStore store, int from, int to) throws IOException {
+        segment.clear();
+        for (int row = from; row < to; row++) {
+            segment.add(store.getEpochDay(row), store.getCents(row));
+        }
+        recordSize(segment);
+    }
+
+    /**
+     * Replace the manifest file atomically. Segments whose numbers are out of date keep their old size,
+     * so they are rescanned next time.
+     */
+    public void write() throws IOException {
+        Path temp = dir.resolve(FILE_NAME + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            for (Segment segment : segments.values()) {
+                if (segment.rows == 0 && !Files.exists(file(segment))) {
+                    continue;
+                }
+                out.write(segment.getFileName() + "|" + segment.getFirstDate() + "|" + segment.getLastDate()
+                        + "|" + segment.rows + "|" + segment.depositCents + "|" + segment.paymentCents + "|" + segment.bytes);
+                out.write('\n');
+            }
+        }
+        Files.move(temp, dir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
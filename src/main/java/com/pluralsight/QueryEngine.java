@@ -0,0 +1,255 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs a TransactionQuery against the ledger.
+ * The planner estimates how many rows each available access path would visit (date index range,
+ * vendor or description index posting list, or a full scan), walks the cheapest one and checks the
+ * remaining criteria with one predicate compiled from the query.
+ * A query works on the rows present when it starts, taken from one date index view, so rows appended
+ * by other threads while it runs are left for the next query. Deleted rows are never returned: the indexes
+ * drop them and a full scan skips them.
+ */
+public class QueryEngine {
+
+    public enum AccessPath {
+        DATE_INDEX("date index"),
+        VENDOR_INDEX("vendor index"),
+        DESCRIPTION_INDEX("description index"),
+        FULL_SCAN("full scan");
+
+        private final String label;
+
+        AccessPath(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Predicate over a ledger row number.
+     */
+    @FunctionalInterface
+    interface RowPredicate {
+        boolean test(int row);
+
+        default RowPredicate and(RowPredicate other) {
+            return row -> test(row) && other.test(row);
+        }
+    }
+
+    /**
+     * Matching rows newest first plus the numbers needed to judge the plan.
+     */
+    public static class Result {
+        private final int[] rows;
+        private final AccessPath accessPath;
+        private final int scanned;
+
+        Result(int[] rows, AccessPath accessPath, int scanned) {
+            this.rows = rows;
+            this.accessPath = accessPath;
+            this.scanned = scanned;
+        }
+
+        public int[] getRows() {
+            return rows;
+        }
+
+        public AccessPath getAccessPath() {
+            return accessPath;
+        }
+
+        public int getScanned() {
+            return scanned;
+        }
+
+        public int getMatched() {
+            return rows.length;
+        }
+    }
+
+    private final LedgerStore store;
+    private final DateIndex dateIndex;
+    private final VendorIndex vendorIndex;
+    private final DescriptionIndex descriptionIndex;
+
+    public QueryEngine(LedgerStore store, DateIndex dateIndex, VendorIndex vendorIndex, DescriptionIndex descriptionIndex) {
+        this.store = store;
+        this.dateIndex = dateIndex;
+        this.vendorIndex = vendorIndex;
+        this.descriptionIndex = descriptionIndex;
+    }
+
+    public Result execute(TransactionQuery query) {
+        long started = Metrics.start();
+        /// the view fixes which rows this query sees: store rows [0, limit).
+        DateIndex.View view = dateIndex.view();
+        int limit = view.coveredRows();
+
+        /// estimate every access path, a full scan is always possible.
+        AccessPath path = AccessPath.FULL_SCAN;
+        int estimate = limit;
+
+        int from = 0;
+        int to = 0;
+        if (query.hasDateRange()) {
+            from = query.getStartDate() == null ? 0 : view.lowerBound((int) query.getStartDate().toEpochDay());
+            to = query.getEndDate() == null ? view.size() : view.upperBound((int) query.getEndDate().toEpochDay());
+            to = Math.max(from, to);
+            if (to - from < estimate) {
+                path = AccessPath.DATE_INDEX;
+                estimate = to - from;
+            }
+        }
+        int[] vendorRows = null;
+        if (query.hasVendor()) {
+            vendorRows = below(vendorIndex.find(query.getVendor()), limit);
+            if (vendorRows.length < estimate) {
+                path = AccessPath.VENDOR_INDEX;
+                estimate = vendorRows.length;
+            }
+        }
+        int[] descriptionRows = null;
+        if (query.hasDescription() && !DescriptionIndex.terms(query.getDescription()).isEmpty()) {
+            descriptionRows = below(descriptionIndex.find(query.getDescription()), limit);
+            if (descriptionRows.length < estimate) {
+                path = AccessPath.DESCRIPTION_INDEX;
+            }
+        }
+
+        RowPredicate predicate = compile(query, path);
+        IntList matches = new IntList();
+        int scanned = 0;
+        switch (path) {
+            case DATE_INDEX -> {
+                for (int position = from; position < to; position++) {
+                    int row = view.rowAt(position);
+                    if (predicate.test(row)) {
+                        matches.add(row);
+                    }
+                }
+                scanned = to - from;
+            }
+            case VENDOR_INDEX -> {
+                for (int row : vendorRows) {
+                    if (predicate.test(row)) {
+                        matches.add(row);
+                    }
+                }
+                scanned = vendorRows.length;
+            }
+            case DESCRIPTION_INDEX -> {
+                for (int row : descriptionRows) {
+                    if (predicate.test(row)) {
+                        matches.add(row);
+                    }
+                }
+                scanned = descriptionRows.length;
+            }
+            case FULL_SCAN -> {
+                for (int row = 0; row < limit; row++) {
+                    if (!store.isDeleted(row) && predicate.test(row)) {
+                        matches.add(row);
+                    }
+                }
+                scanned = limit;
+            }
+        }
+
+        int[] rows = matches.toArray();
+        store.sortNewestFirst(rows);
+        Metrics.query(started, scanned, rows.length);
+        return new Result(rows, path, scanned);
+    }
+
+    /// posting lists are in row order, drop rows appended after the view was taken.
+    private static int[] below(int[] rows, int limit) {
+        int count = rows.length;
+        while (count > 0 && rows[count - 1] >= limit) {
+            count--;
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Combine the criteria not already guaranteed by the access path into one predicate.
+     */
+    RowPredicate compile(TransactionQuery query, AccessPath path) {
+        RowPredicate predicate = row -> true;
+
+        if (query.hasDateRange() && path != AccessPath.DATE_INDEX) {
+            int startDay = query.getStartDate() == null ? Integer.MIN_VALUE : (int) query.getStartDate().toEpochDay();
+            int endDay = query.getEndDate() == null ? Integer.MAX_VALUE : (int) query.getEndDate().toEpochDay();
+            predicate = predicate.and(row -> {
+                int day = store.getEpochDay(row);
+                return day >= startDay && day <= endDay;
+            });
+        }
+        if (query.hasVendor() && path != AccessPath.VENDOR_INDEX) {
+            predicate = predicate.and(vendorEquals(query.getVendor()));
+        }
+        if (query.hasAmount()) {
+            long min = query.getMinCents() == null ? Long.MIN_VALUE : query.getMinCents();
+            long max = query.getMaxCents() == null ? Long.MAX_VALUE : query.getMaxCents();
+            predicate = predicate.and(row -> {
+                long cents = store.getCents(row);
+                return cents >= min && cents <= max;
+            });
+        }
+        if (query.hasDescription() && path != AccessPath.DESCRIPTION_INDEX) {
+            predicate = predicate.and(descriptionMatches(query.getDescription()));
+        }
+        return predicate;
+    }
+
+    /**
+     * Whole name vendor match ignoring case, each distinct vendor is tested once and the answer cached by id.
+     */
+    private RowPredicate vendorEquals(String vendor) {
+        String key = VendorIndex.normalize(vendor);
+        StringDictionary vendors = store.getVendors();
+        byte[] verdicts = new byte[vendors.size()];
+        return row -> {
+            int id = store.getVendorId(row);
+            if (verdicts[id] == 0) {
+                verdicts[id] = VendorIndex.normalize(vendors.decode(id)).equals(key) ? (byte) 1 : (byte) 2;
+            }
+            return verdicts[id] == 1;
+        };
+    }
+
+    /**
+     * Same match as DescriptionIndex.find: the description contains every term of the text, ignoring case.
+     * A text without letters or digits is matched as one substring.
+     * Each distinct description is tested once and the answer cached by id.
+     */
+    private RowPredicate descriptionMatches(String text) {
+        List<String> terms = DescriptionIndex.terms(text);
+        List<String> needles = terms.isEmpty() ? List.of(text.trim().toLowerCase(Locale.ROOT)) : terms;
+        StringDictionary descriptions = store.getDescriptions();
+        /// 0 = not tested yet, 1 = matches, 2 = does not match.
+        byte[] verdicts = new byte[descriptions.size()];
+        return row -> {
+            int id = store.getDescriptionId(row);
+            if (verdicts[id] == 0) {
+                String description = descriptions.decode(id).toLowerCase(Locale.ROOT);
+                verdicts[id] = 1;
+                for (String needle : needles) {
+                    if (!description.contains(needle)) {
+                        verdicts[id] = 2;
+                        break;
+                    }
+                }
+            }
+            return verdicts[id] == 1;
+        };
+    }
+}
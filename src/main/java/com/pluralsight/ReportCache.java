@@ -0,0 +1,169 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recently shown date range reports, so going back to "Previous Year" does not walk and total the year again.
+ * Entries are keyed by report type and date range and evicted least recently used first, once there are more
+ * than maxEntries of them or they hold more than maxRows rows between them.
+ * <p>
+ * Appends keep the cache exact instead of clearing it: a new row evicts only the reports whose range contains
+ * its date, reports ending before it are unaffected and reports starting after it just have their closing
+ * balance moved by its amount.
+ */
+public class ReportCache {
+
+    /**
+     * Rows, totals and closing balance of one date range, as of when it was computed.
+     */
+    public static class Report {
+        private final String type;
+        private final LocalDate start;
+        private final LocalDate end;
+        private final int[] rows;
+        private final LedgerAggregates.Totals totals;
+        private long balanceCents;
+
+        Report(String type, LocalDate start, LocalDate end, int[] rows, LedgerAggregates.Totals totals, long balanceCents) {
+            this.type = type;
+            this.start = start;
+            this.end = end;
+            this.rows = rows;
+            this.totals = totals;
+            this.balanceCents = balanceCents;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public LocalDate getStart() {
+            return start;
+        }
+
+        public LocalDate getEnd() {
+            return end;
+        }
+
+        /**
+         * Rows of the range newest first.
+         */
+        public LedgerRenderer.RowSource getRows() {
+            return LedgerRenderer.RowSource.of(rows);
+        }
+
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        public LedgerAggregates.Totals getTotals() {
+            return totals;
+        }
+
+        /**
+         * Balance of the whole ledger at the end of the last day.
+         */
+        public synchronized long getBalanceCents() {
+            return balanceCents;
+        }
+
+        private synchronized void moveBalance(long cents) {
+            balanceCents += cents;
+        }
+
+        private String key() {
+            return ReportCache.key(type, start, end);
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxRows;
+    private final LinkedHashMap<String, Report> reports = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedRows;
+    /// bumped by every change to the ledger, a report computed across a change is not cached.
+    private long version;
+
+    /**
+     * @param maxEntries most reports kept, 0 turns the cache off.
+     * @param maxRows    most rows kept over all reports, a larger report is not cached.
+     */
+    public ReportCache(int maxEntries, long maxRows) {
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * The cached report, or null.
+     */
+    public synchronized Report get(String type, LocalDate start, LocalDate end) {
+        Report report = reports.get(key(type, start, end));
+        Metrics.reportCache(report != null);
+        return report;
+    }
+
+    /**
+     * Version to read before computing a report and pass to put.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Keep a report computed from the ledger as it was at version, unless the ledger changed since.
+     */
+    public synchronized void put(Report report, long computedAt) {
+        if (computedAt != version || maxEntries == 0 || report.rows.length > maxRows) {
+            return;
+        }
+        Report old = reports.put(report.key(), report);
+        if (old != null) {
+            cachedRows -= old.rows.length;
+        }
+        cachedRows += report.rows.length;
+        Iterator<Report> eldest = reports.values().iterator();
+        while (reports.size() > maxEntries || cachedRows > maxRows) {
+            cachedRows -= eldest.next().rows.length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A row dated epochDay with the given amount was added to the ledger, or with the amount negated, deleted.
+     */
+    public synchronized void added(int epochDay, long cents) {
+        version++;
+        Iterator<Map.Entry<String, Report>> entries = reports.entrySet().iterator();
+        while (entries.hasNext()) {
+            Report report = entries.next().getValue();
+            if (epochDay > report.end.toEpochDay()) {
+                continue;
+            }
+            if (epochDay < report.start.toEpochDay()) {
+                report.moveBalance(cents);
+            } else {
+                cachedRows -= report.rows.length;
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget every report, after rows were loaded or renumbered.
+     */
+    public synchronized void clear() {
+        version++;
+        reports.clear();
+        cachedRows = 0;
+    }
+
+    public synchronized int size() {
+        return reports.size();
+    }
+
+    private static String key(String type, LocalDate start, LocalDate end) {
+        return type + "|" + start + "|" + end;
+    }
+}
@@ -0,0 +1,60 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * The predefined date range reports, relative to today.
+ */
+public enum ReportPeriod {
+    MONTH_TO_DATE("Month To Date", "mtd"),
+    PREVIOUS_MONTH("Previous Month", "previous-month"),
+    YEAR_TO_DATE("Year To Date", "ytd"),
+    PREVIOUS_YEAR("Previous Year", "previous-year");
+
+    private final String label;
+    private final String command;
+
+    ReportPeriod(String label, String command) {
+        this.label = label;
+        this.command = command;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /// name used on the command line, e.g. "mtd".
+    public String getCommand() {
+        return command;
+    }
+
+    public LocalDate start(LocalDate today) {
+        return switch (this) {
+            case MONTH_TO_DATE -> today.withDayOfMonth(1);
+            case PREVIOUS_MONTH -> today.minusMonths(1).withDayOfMonth(1);
+            case YEAR_TO_DATE -> today.withDayOfYear(1);
+            case PREVIOUS_YEAR -> today.minusYears(1).withDayOfYear(1);
+        };
+    }
+
+    public LocalDate end(LocalDate today) {
+        return switch (this) {
+            case MONTH_TO_DATE, YEAR_TO_DATE -> today;
+            case PREVIOUS_MONTH -> today.minusMonths(1).with(TemporalAdjusters.lastDayOfMonth());
+            case PREVIOUS_YEAR -> today.minusYears(1).with(TemporalAdjusters.lastDayOfYear());
+        };
+    }
+
+    /**
+     * @return the period with this command name, or null.
+     */
+    public static ReportPeriod fromCommand(String command) {
+        for (ReportPeriod period : values()) {
+            if (period.command.equalsIgnoreCase(command)) {
+                return period;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,133 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Imports a statement file that may overlap with the ledger.
+ * The file is parsed in parallel chunks into a staging store, every row gets a 64-bit fingerprint of
+ * (date, time, vendor, amount) and rows whose fingerprint is already in the ledger are dropped, deleted rows
+ * and the replaced versions of edited ones do not count.
+ * The rest is added to the ledger in one batched append.
+ * <p>
+ * Vendors compare ignoring case and surrounding spaces, the description is not part of the match since
+ * banks often word it differently. Duplicates are counted per copy: a transaction that is in the ledger
+ * once is skipped once, a second identical line in the statement is imported.
+ */
+public class StatementImporter {
+
+    private StatementImporter() {
+    }
+
+    /**
+     * Counts of one import.
+     */
+    public static class Result {
+        private final int imported;
+        private final int duplicates;
+        private final List<String> errors;
+
+        Result(int imported, int duplicates, List<String> errors) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.errors = errors;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public int getRejected() {
+            return errors.size();
+        }
+
+        /**
+         * One message per rejected line, with its line number in the statement.
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    /**
+     * Import the rows of the file that are not in the ledger yet, the ledger journal must be open.
+     * A lazy ledger is loaded first, duplicates are found against its rows.
+     *
+     * @throws IOException if the file can not be read or the rows can not be written.
+     */
+    public static Result importFile(Ledger book, Path file) throws IOException {
+        /// a lazy ledger's store is empty until loaded, and every row would look new against it.
+        book.loadAll();
+        LedgerStore staged = new LedgerStore();
+        CsvLoader.Result parsed = CsvLoader.load(file, staged);
+
+        LedgerStore store = book.getStore();
+        long[] existing = fingerprints(store);
+        FingerprintSet known = new FingerprintSet(existing.length);
+        for (int row = 0; row < existing.length; row++) {
+            /// a deleted transaction, or the old version of an edited one, is no longer in the ledger.
+            if (!store.isDeleted(row)) {
+                known.add(existing[row]);
+            }
+        }
+
+        /// fingerprints are computed in parallel, the lookups stay in file order so copies are matched one to one.
+        long[] incoming = fingerprints(staged);
+        IntList accepted = new IntList();
+        for (int row = 0; row < incoming.length; row++) {
+            if (!known.remove(incoming[row])) {
+                accepted.add(row);
+            }
+        }
+
+        int imported = book.addAll(staged, accepted.toArray());
+        return new Result(imported, incoming.length - imported, parsed.getErrors());
+    }
+
+    /**
+     * Fingerprint of every row of the store, by row number.
+     */
+    static long[] fingerprints(LedgerStore store) {
+        /// each vendor name is normalized and hashed once, rows only look up their vendor id.
+        StringDictionary vendors = store.getVendors();
+        long[] vendorHashes = IntStream.range(0, vendors.size()).parallel()
+                .mapToLong(id -> hash(VendorIndex.normalize(vendors.decode(id))))
+                .toArray();
+        return IntStream.range(0, store.size()).parallel()
+                .mapToLong(row -> fingerprint(store.getEpochDay(row), store.getSecondOfDay(row),
+                        vendorHashes[store.getVendorId(row)], store.getCents(row)))
+                .toArray();
+    }
+
+    static long fingerprint(int epochDay, int secondOfDay, long vendorHash, long cents) {
+        /// a day has fewer than 2^17 seconds, so date and time pack into one long without overlap.
+        long h = mix(((long) epochDay << 17) | secondOfDay);
+        h = mix(h ^ vendorHash);
+        return mix(h ^ cents);
+    }
+
+    /// 64-bit FNV-1a over the characters, finished with mix.
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /// MurmurHash3 finalizer, spreads every input bit over the whole result.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87b5L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,63 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each distinct string to a small int id so a column can store ids instead of String references.
+ * Ids are handed out in first seen order, starting at 0.
+ * Encoding takes a lock, find and decode do not and may run while another thread encodes.
+ */
+public class StringDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    /// the value is stored before the volatile size is raised, so any id below size() decodes.
+    private volatile String[] values = new String[16];
+    private volatile int size;
+
+    /**
+     * Id of the value, adding it to the dictionary if it is new.
+     *
+     * @param value string to encode.
+     * @return id of the value.
+     */
+    public int encode(String value) {
+        Integer id = ids.get(value);
+        return id != null ? id : add(value);
+    }
+
+    private synchronized int add(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        int next = size;
+        if (next == values.length) {
+            values = Arrays.copyOf(values, next * 2);
+        }
+        values[next] = value;
+        size = next + 1;
+        ids.put(value, next);
+        return next;
+    }
+
+    /**
+     * Id of the value or -1 if the dictionary has never seen it.
+     */
+    public int find(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    public String decode(int id) {
+        if (id >= size) {
+            throw new IndexOutOfBoundsException("id " + id + " size " + size);
+        }
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -6,6 +6,9 @@ import java.time.format.DateTimeFormatter;
 
 public class Transaction {
 
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
     private LocalDate date;
     private LocalTime time;
     private String description;
@@ -67,12 +70,6 @@ public class Transaction {
         String descriptionTruncate = description.length() > 30 ? description.substring(0, 27) + "..." : description;
         String vendorTruncate = vendor.length() > 20 ? vendor.substring(0, 17) + "..." : vendor;
 
-        String DATE_PATTERN = "yyyy-MM-dd";
-        String TIME_PATTERN = "HH:mm:ss";
-
-        DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern(DATE_PATTERN);
-        DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern(TIME_PATTERN);
-
         return String.format("%s|%s|%-30s|%-20s| $%.2f", date.format(DATE_FMT), time.format(TIME_FMT),
                 descriptionTruncate, vendorTruncate, amount);
     }
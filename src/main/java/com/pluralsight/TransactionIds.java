@@ -0,0 +1,282 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Stable ids of the transactions of a Ledger, the key of EditLog records.
+ * <p>
+ * Ids start at 1 and follow the order of the transactions file. Compaction leaves deleted rows out of the
+ * file without reusing their ids, so it also writes transactions.ids: a first line "size checksum nextId" tying
+ * it to the file it describes (its size at the time and the CRC of the bytes before that, as the snapshot does)
+ * followed by the ids of the file's rows as runs of consecutive ids, "firstId count" per line. Rows appended
+ * after the runs take ids from nextId on.
+ * <p>
+ * In memory it also follows the rows added since the load: a new row of the file takes the next id, the new
+ * version of an edited row keeps the id of the row it replaces. Not thread safe, Ledger calls it under its lock.
+ */
+public class TransactionIds {
+
+    /**
+     * Runs of consecutive ids in file order, as compaction writes the file.
+     */
+    static class Runs {
+        private final IntList firstIds = new IntList();
+        private final IntList counts = new IntList();
+        private int lastId = -1;
+
+        void add(int id) {
+            if (!counts.isEmpty() && id == lastId + 1) {
+                counts.set(counts.size() - 1, counts.get(counts.size() - 1) + 1);
+            } else {
+                firstIds.add(id);
+                counts.add(1);
+            }
+            lastId = id;
+        }
+    }
+
+    /// first id and first file row of each run in file order, runRows has the rows covered as its last entry.
+    private final int[] runIds;
+    private final int[] runRows;
+    /// run numbers sorted by first id, for looking up the row of an id.
+    private final int[] runsById;
+    private final int nextId;
+    /// the transactions file described, -1 when there is no ids file and ids are plain row numbers.
+    private final long csvSize;
+    private final long csvChecksum;
+
+    private int loadedRows;
+    private int firstNewId;
+    /// rows of new file lines in id order from firstNewId, and the id of every row added since the load.
+    private final IntList newRows = new IntList();
+    private final IntList sessionIds = new IntList();
+    /// rows added since the load that are new versions of edited rows, offset by loadedRows.
+    private final BitSet versions = new BitSet();
+    /// row of every id that was edited or deleted since the load, -1 once deleted.
+    private final Map<Integer, Integer> moved = new HashMap<>();
+
+    private TransactionIds(int[] runIds, int[] runRows, int nextId, long csvSize, long csvChecksum) {
+        this.runIds = runIds;
+        this.runRows = runRows;
+        this.nextId = nextId;
+        this.csvSize = csvSize;
+        this.csvChecksum = csvChecksum;
+        Integer[] order = new Integer[runIds.length];
+        for (int run = 0; run < order.length; run++) {
+            order[run] = run;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(runIds[a], runIds[b]));
+        this.runsById = Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Ids of a file that was never compacted: row number plus one.
+     */
+    static TransactionIds identity() {
+        return new TransactionIds(new int[0], new int[]{0}, 1, -1, 0);
+    }
+
+    /**
+     * Read an ids file, a missing one means the file was never compacted.
+     *
+     * @throws IOException if it can not be read or is damaged.
+     */
+    static TransactionIds read(Path file) throws IOException {
+        if (Files.notExists(file)) {
+            return identity();
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        try {
+            String[] header = lines.get(0).split(" ");
+            int[] runIds = new int[lines.size() - 1];
+            int[] runRows = new int[lines.size()];
+            for (int run = 0; run < runIds.length; run++) {
+                String[] fields = lines.get(run + 1).split(" ");
+                runIds[run] = Integer.parseInt(fields[0]);
+                runRows[run + 1] = runRows[run] + Integer.parseInt(fields[1]);
+            }
+            return new TransactionIds(runIds, runRows, Integer.parseInt(header[2]), Long.parseLong(header[0]),
+                    Long.parseLong(header[1]));
+        } catch (RuntimeException e) {
+            throw new IOException(file + " is damaged: " + e);
+        }
+    }
+
+    /**
+     * Replace an ids file atomically, forced to disk before it takes the place of the old one.
+     *
+     * @param csvSize size of the transactions file it describes.
+     * @param nextId  first id not handed out yet.
+     */
+    static void write(Path file, Path csv, long csvSize, int nextId, Runs runs) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append(csvSize).append(' ').append(LedgerSnapshot.guardChecksum(csv, csvSize)).append(' ')
+                .append(nextId).append('\n');
+        for (int run = 0; run < runs.firstIds.size(); run++) {
+            text.append(runs.firstIds.get(run)).append(' ').append(runs.counts.get(run)).append('\n');
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Whether these ids belong to the transactions file as it is now, i.e. it still starts with the bytes it
+     * had when they were written.
+     */
+    boolean describes(Path csv) throws IOException {
+        if (csvSize < 0) {
+            return true;
+        }
+        return Files.exists(csv) && Files.size(csv) >= csvSize && LedgerSnapshot.guardChecksum(csv, csvSize) == csvChecksum;
+    }
+
+    /* ------------------------------------------------------------------
+       Rows of the ledger
+       ------------------------------------------------------------------ */
+
+    /**
+     * The first rows of the store are the rows of the file, in file order.
+     */
+    void loaded(int rows) {
+        loadedRows = rows;
+        firstNewId = idOfFileRow(rows);
+        newRows.clear();
+        sessionIds.clear();
+        versions.clear();
+        moved.clear();
+    }
+
+    /**
+     * A row appended to the file was added to the store.
+     *
+     * @return its id.
+     */
+    int added(int row) {
+        checkNext(row);
+        int id = firstNewId + newRows.size();
+        newRows.add(row);
+        sessionIds.add(id);
+        return id;
+    }
+
+    /**
+     * The row holding the id was deleted, row is its new version.
+     */
+    void replaced(int id, int row) {
+        checkNext(row);
+        versions.set(sessionIds.size());
+        sessionIds.add(id);
+        moved.put(id, row);
+    }
+
+    /**
+     * The row holding the id was deleted.
+     */
+    void deleted(int id) {
+        moved.put(id, -1);
+    }
+
+    int idOf(int row) {
+        return row < loadedRows ? idOfFileRow(row) : sessionIds.get(row - loadedRows);
+    }
+
+    /**
+     * Current row of an id, -1 if there is none or it was deleted.
+     */
+    int rowOf(int id) {
+        Integer row = moved.get(id);
+        if (row != null) {
+            return row;
+        }
+        if (id >= firstNewId) {
+            return id - firstNewId < newRows.size() ? newRows.get(id - firstNewId) : -1;
+        }
+        return fileRowOf(id);
+    }
+
+    /**
+     * Whether the row is the new version of an edited row, kept in the edit log rather than in the file.
+     */
+    boolean isVersion(int row) {
+        return row >= loadedRows && versions.get(row - loadedRows);
+    }
+
+    /**
+     * First id not handed out yet.
+     */
+    int getNextId() {
+        return firstNewId + newRows.size();
+    }
+
+    /**
+     * Ids of the rows below the given row frozen as they are now, for reading without the lock.
+     */
+    IntUnaryOperator idsBelow(int rows) {
+        int[] session = Arrays.copyOf(sessionIds.toArray(), Math.max(0, rows - loadedRows));
+        int loaded = loadedRows;
+        return row -> row < loaded ? idOfFileRow(row) : session[row - loaded];
+    }
+
+    private void checkNext(int row) {
+        if (row != loadedRows + sessionIds.size()) {
+            throw new IllegalStateException("row " + row + " added out of order, expected " + (loadedRows + sessionIds.size()));
+        }
+    }
+
+    private int idOfFileRow(int row) {
+        int covered = runRows[runRows.length - 1];
+        if (row >= covered) {
+            return nextId + row - covered;
+        }
+        /// last run starting at or before the row.
+        int run = Arrays.binarySearch(runRows, 0, runIds.length, row);
+        if (run < 0) {
+            run = -run - 2;
+        }
+        /// runs never have length 0, so equal starts can not occur.
+        return runIds[run] + row - runRows[run];
+    }
+
+    private int fileRowOf(int id) {
+        if (id >= nextId) {
+            return runRows[runRows.length - 1] + id - nextId;
+        }
+        int low = 0;
+        int high = runsById.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (runIds[runsById[mid]] <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == 0) {
+            return -1;
+        }
+        int run = runsById[low - 1];
+        int offset = id - runIds[run];
+        return offset < runRows[run + 1] - runRows[run] ? runRows[run] + offset : -1;
+    }
+}
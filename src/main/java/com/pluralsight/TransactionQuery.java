@@ -0,0 +1,105 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+
+/**
+ * Search criteria for the custom search, every field is optional and unset fields match everything.
+ * Dates are inclusive, the description matches when it contains every word of the criterion ignoring case
+ * ("rent may" finds "May rent payment"), the vendor matches the whole name ignoring case and amounts are
+ * inclusive bounds in cents.
+ */
+public class TransactionQuery {
+
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String description;
+    private String vendor;
+    private Long minCents;
+    private Long maxCents;
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getVendor() {
+        return vendor;
+    }
+
+    public void setVendor(String vendor) {
+        this.vendor = vendor;
+    }
+
+    public Long getMinCents() {
+        return minCents;
+    }
+
+    public void setMinCents(Long minCents) {
+        this.minCents = minCents;
+    }
+
+    public Long getMaxCents() {
+        return maxCents;
+    }
+
+    public void setMaxCents(Long maxCents) {
+        this.maxCents = maxCents;
+    }
+
+    /**
+     * Set the amount bounds from one exact value or a "min..max" range with either side optional.
+     *
+     * @return false, leaving the bounds unchanged, if a side is not a number.
+     */
+    public boolean setAmount(String text) {
+        String[] bounds = text.contains("..") ? text.split("\\.\\.", -1) : new String[]{text, text};
+        try {
+            Long min = bounds[0].isBlank() ? null : MoneyCodec.parseCents(bounds[0].trim());
+            Long max = bounds[1].isBlank() ? null : MoneyCodec.parseCents(bounds[1].trim());
+            minCents = min;
+            maxCents = max;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public boolean hasDateRange() {
+        return startDate != null || endDate != null;
+    }
+
+    public boolean hasDescription() {
+        return description != null && !description.isBlank();
+    }
+
+    public boolean hasVendor() {
+        return vendor != null && !vendor.isBlank();
+    }
+
+    public boolean hasAmount() {
+        return minCents != null || maxCents != null;
+    }
+
+    public boolean isEmpty() {
+        return !hasDateRange() && !hasDescription() && !hasVendor() && !hasAmount();
+    }
+}
@@ -0,0 +1,125 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from normalized vendor name (trimmed, lower case) to the ledger rows of that vendor.
+ * Names are kept in a sorted map so a prefix maps to one contiguous key range for type-ahead search.
+ * Rows appended to or deleted from the store are picked up on the next lookup.
+ * Lookups and catching up share one lock, lookups return copies so callers never see a list that is still growing.
+ */
+public class VendorIndex {
+
+    private final LedgerStore store;
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /// normalized key per vendor dictionary id, so each distinct vendor is normalized only once.
+    private Entry[] entryByVendorId = new Entry[0];
+    private int indexedRows;
+    /// deletions of the store already taken out of the row lists.
+    private int removedRows;
+
+    /**
+     * All rows for one normalized vendor name, in row order.
+     */
+    public static class Entry {
+        private final String name;
+        private final IntList rows = new IntList();
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Vendor name as it was first written in the ledger.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Rows indexed for this vendor so far.
+         */
+        public int getRowCount() {
+            return rows.size();
+        }
+    }
+
+    public VendorIndex(LedgerStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Index rows appended to the store since the last call and drop the rows deleted since.
+     */
+    public synchronized void sync() {
+        int total = store.size();
+        StringDictionary vendors = store.getVendors();
+        if (entryByVendorId.length < vendors.size()) {
+            entryByVendorId = Arrays.copyOf(entryByVendorId, vendors.size());
+        }
+        for (int row = indexedRows; row < total; row++) {
+            int vendorId = store.getVendorId(row);
+            Entry entry = entryByVendorId[vendorId];
+            if (entry == null) {
+                String vendor = vendors.decode(vendorId);
+                entry = entries.computeIfAbsent(normalize(vendor), key -> new Entry(vendor));
+                entryByVendorId[vendorId] = entry;
+            }
+            entry.rows.add(row);
+        }
+        indexedRows = total;
+
+        /// a row deleted right after it was appended may not be indexed yet, it is dropped by a later call.
+        int deletions = store.getDeletedCount();
+        while (removedRows < deletions && store.getDeletedRow(removedRows) < total) {
+            int row = store.getDeletedRow(removedRows++);
+            entryByVendorId[store.getVendorId(row)].rows.removeSorted(row);
+        }
+    }
+
+    /**
+     * Rows whose vendor equals the given name ignoring case and surrounding spaces.
+     *
+     * @return a copy of the matching rows in row order, empty if none.
+     */
+    public synchronized int[] find(String vendor) {
+        sync();
+        Entry entry = entries.get(normalize(vendor));
+        return entry == null ? new int[0] : entry.rows.toArray();
+    }
+
+    /**
+     * Vendors whose normalized name starts with the prefix, in alphabetical order.
+     *
+     * @param prefix start of a vendor name, case is ignored.
+     * @param limit  maximum number of vendors returned.
+     */
+    public synchronized List<Entry> findByPrefix(String prefix, int limit) {
+        sync();
+        String key = normalize(prefix);
+        SortedMap<String, Entry> range = key.isEmpty() ? entries : entries.subMap(key, key + Character.MAX_VALUE);
+
+        List<Entry> result = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : range.entrySet()) {
+            if (result.size() == limit) {
+                break;
+            }
+            /// a vendor whose rows were all deleted.
+            if (entry.getValue().rows.isEmpty()) {
+                continue;
+            }
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    static String normalize(String vendor) {
+        return vendor.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,94 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Appends, backdated rows one at a time and in batches, and deletes in random order, each view checked
+ * against the store's rows sorted by date and time. Enough backdated rows go in for them to be kept
+ * beside the sorted rows and to be merged into them.
+ */
+class DateIndexTest {
+
+    private static final int FIRST_DAY = 20_000;
+
+    @Test
+    void viewsMatchTheSortedStoreAndStayStable() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int trial = 0; trial < 20; trial++) {
+            LedgerStore store = new LedgerStore();
+            DateIndex index = new DateIndex(store);
+            List<DateIndex.View> held = new ArrayList<>();
+            List<int[]> heldRows = new ArrayList<>();
+
+            for (int step = 0; step < 2000; step++) {
+                int kind = random.nextInt(10);
+                int batch = kind < 7 ? 1 : random.nextInt(50);
+                for (int added = 0; added < batch; added++) {
+                    /// most rows are dated today, the others anywhere before.
+                    int day = kind < 4 ? FIRST_DAY + step : FIRST_DAY + random.nextInt(step + 1);
+                    store.add(day, random.nextInt(3), "Row", "Vendor", 1);
+                }
+                if (random.nextInt(30) == 0) {
+                    int row = random.nextInt(store.size());
+                    if (!store.isDeleted(row)) {
+                        store.delete(row);
+                    }
+                }
+                if (random.nextInt(20) == 0) {
+                    DateIndex.View view = index.view();
+                    held.add(view);
+                    heldRows.add(check(store, view));
+                }
+            }
+            check(store, index.view());
+
+            /// a view taken earlier still shows the same rows.
+            for (int i = 0; i < held.size(); i++) {
+                int[] rows = heldRows.get(i);
+                for (int position = 0; position < rows.length; position++) {
+                    assertEquals(rows[position], held.get(i).rowAt(position), "held view changed");
+                }
+            }
+        }
+    }
+
+    /// the view holds the rows it covers that are not deleted, in date and time order; returns them.
+    private static int[] check(LedgerStore store, DateIndex.View view) {
+        List<Integer> expected = new ArrayList<>();
+        for (int row = 0; row < view.coveredRows(); row++) {
+            if (!store.isDeleted(row)) {
+                expected.add(row);
+            }
+        }
+        expected.sort(Comparator.comparingLong(store::dateTimeKey));
+        assertEquals(expected.size(), view.size());
+
+        int[] rows = new int[view.size()];
+        LedgerRenderer.RowSource newestFirst = view.newestFirst();
+        for (int position = 0; position < rows.length; position++) {
+            rows[position] = view.rowAt(position);
+            assertEquals(expected.get(position), rows[position], "row at position " + position);
+            assertEquals(expected.get(rows.length - 1 - position), newestFirst.rowAt(position), "newest first");
+        }
+        int lower = 0;
+        for (int day = FIRST_DAY - 1; day <= FIRST_DAY + 2000; day += 37) {
+            while (lower < rows.length && store.getEpochDay(rows[lower]) < day) {
+                lower++;
+            }
+            int upper = lower;
+            while (upper < rows.length && store.getEpochDay(rows[upper]) <= day) {
+                upper++;
+            }
+            assertEquals(lower, view.lowerBound(day), "lower bound of day " + day);
+            assertEquals(upper, view.upperBound(day), "upper bound of day " + day);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,244 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many writer threads append to one LedgerStore while reader threads scan it and its DateIndex without locks.
+ * Every row encodes its writer and sequence number in all of its columns, so a reader can tell a row whose
+ * columns come from different appends (a torn read), and the end state shows whether any append was lost.
+ */
+class LedgerStoreStressTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int ROWS_PER_WRITER = 25_000;
+    private static final int FIRST_DAY = 19_000;
+    /// dates are scattered over ten years, so most appends are backdated and the index has to merge them.
+    private static final int DAYS = 3650;
+    /// one row in this many is deleted by the deleting test.
+    private static final int DELETE_EVERY = 10;
+
+    @Test
+    void appendsFromManyWritersAreNeitherLostNorTorn() throws InterruptedException {
+        LedgerStore store = new LedgerStore();
+        DateIndex index = new DateIndex(store);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+        run(store, index, failures, false);
+
+        assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+        int total = WRITERS * ROWS_PER_WRITER;
+        assertEquals(total, store.size());
+        BitSet seen = new BitSet(total);
+        for (int row = 0; row < total; row++) {
+            checkRow(store, row, failures);
+            int appended = appendNumber(store, row);
+            assertTrue(!seen.get(appended), "row appended twice: " + store.toCsvLine(row));
+            seen.set(appended);
+        }
+        assertEquals(total, seen.cardinality());
+        checkView(store, index.view(), failures);
+        assertEquals(total, index.view().size());
+        assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+    }
+
+    @Test
+    void deletesArePublishedWholeAndViewsStayStable() throws InterruptedException {
+        LedgerStore store = new LedgerStore();
+        DateIndex index = new DateIndex(store);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+        run(store, index, failures, true);
+
+        assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+        int total = WRITERS * ROWS_PER_WRITER;
+        assertEquals(total, store.size());
+        assertEquals(total / DELETE_EVERY, store.getDeletedCount());
+        for (int row = 0; row < total; row++) {
+            assertEquals(isToBeDeleted(store, row), store.isDeleted(row), () -> "wrong delete mark");
+        }
+        DateIndex.View view = index.view();
+        checkView(store, view, failures);
+        assertEquals(total - total / DELETE_EVERY, view.size());
+        for (int position = 0; position < view.size(); position++) {
+            assertTrue(!store.isDeleted(view.rowAt(position)), "deleted row in the index");
+        }
+        assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+    }
+
+    /* ------------------------------------------------------------------
+       Threads
+       ------------------------------------------------------------------ */
+
+    /// start the writers, the readers and optionally a deleter at once, wait for all of them.
+    private static void run(LedgerStore store, DateIndex index, Queue<String> failures, boolean delete)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(WRITERS);
+        AtomicBoolean written = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int id = writer;
+            threads.add(new Thread(() -> {
+                await(start);
+                try {
+                    for (int seq = 0; seq < ROWS_PER_WRITER; seq++) {
+                        store.add(dayOf(id, seq), id, "Row " + seq % 64, "Writer " + id, id * 1_000_000L + seq);
+                        if (seq % 1000 == 0) {
+                            /// as the ledger does after an append, while readers take views.
+                            index.sync();
+                        }
+                    }
+                } finally {
+                    writing.countDown();
+                }
+            }, "writer-" + writer));
+        }
+        if (delete) {
+            threads.add(new Thread(() -> {
+                await(start);
+                int next = 0;
+                boolean last = false;
+                while (!last) {
+                    last = written.get();
+                    for (int size = store.size(); next < size; next++) {
+                        if (isToBeDeleted(store, next)) {
+                            store.delete(next);
+                        }
+                    }
+                }
+            }, "deleter"));
+        }
+        for (int reader = 0; reader < READERS; reader++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                DateIndex.View held = null;
+                int[] heldRows = null;
+                boolean last = false;
+                while (!last && failures.isEmpty()) {
+                    last = written.get();
+                    checkRows(store, failures);
+                    checkDeleted(store, failures);
+                    /// a view taken earlier must still show the same rows however much was written since.
+                    if (held != null) {
+                        for (int position = 0; position < held.size(); position++) {
+                            if (held.rowAt(position) != heldRows[position]) {
+                                failures.add("view changed at position " + position);
+                                break;
+                            }
+                        }
+                    }
+                    held = index.view();
+                    heldRows = checkView(store, held, failures);
+                }
+            }, "reader-" + reader));
+        }
+
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failures.add(t.getName() + ": " + e));
+            thread.start();
+        }
+        start.countDown();
+        writing.await();
+        written.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Checks
+       ------------------------------------------------------------------ */
+
+    /// every published row is whole, read once through size() as a reader without a lock does.
+    private static void checkRows(LedgerStore store, Queue<String> failures) {
+        int size = store.size();
+        for (int row = 0; row < size; row++) {
+            if (!checkRow(store, row, failures)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean checkRow(LedgerStore store, int row, Queue<String> failures) {
+        long cents = store.getCents(row);
+        int writer = (int) (cents / 1_000_000L);
+        int seq = (int) (cents % 1_000_000L);
+        if (store.getSecondOfDay(row) != writer || store.getEpochDay(row) != dayOf(writer, seq)
+                || !store.getVendor(row).equals("Writer " + writer)
+                || !store.getDescription(row).equals("Row " + seq % 64)) {
+            failures.add("torn row " + row + ": " + store.toCsvLine(row));
+            return false;
+        }
+        return true;
+    }
+
+    /// the deleted rows published by getDeletedCount are all marked, and are the ones meant to be deleted.
+    private static void checkDeleted(LedgerStore store, Queue<String> failures) {
+        int count = store.getDeletedCount();
+        for (int index = 0; index < count; index++) {
+            int row = store.getDeletedRow(index);
+            if (!store.isDeleted(row) || !isToBeDeleted(store, row)) {
+                failures.add("deleted row " + row + " listed but not marked or not meant to be deleted");
+                return;
+            }
+        }
+    }
+
+    /// the view lists rows it covers, each once, in date and time order; returns its rows by position.
+    private static int[] checkView(LedgerStore store, DateIndex.View view, Queue<String> failures) {
+        int[] rows = new int[view.size()];
+        BitSet seen = new BitSet(view.coveredRows());
+        long previous = Long.MIN_VALUE;
+        for (int position = 0; position < rows.length; position++) {
+            int row = view.rowAt(position);
+            rows[position] = row;
+            if (row >= view.coveredRows() || seen.get(row)) {
+                failures.add("view holds row " + row + " twice or past the " + view.coveredRows() + " it covers");
+                break;
+            }
+            seen.set(row);
+            long key = store.dateTimeKey(row);
+            if (key < previous) {
+                failures.add("view out of order at position " + position);
+                break;
+            }
+            previous = key;
+        }
+        return rows;
+    }
+
+    private static int dayOf(int writer, int seq) {
+        return FIRST_DAY + (int) ((seq * 7919L + writer * 31L) % DAYS);
+    }
+
+    /// writer and sequence number of a row as one number below WRITERS * ROWS_PER_WRITER.
+    private static int appendNumber(LedgerStore store, int row) {
+        long cents = store.getCents(row);
+        return (int) (cents / 1_000_000L) * ROWS_PER_WRITER + (int) (cents % 1_000_000L);
+    }
+
+    private static boolean isToBeDeleted(LedgerStore store, int row) {
+        return store.getCents(row) % 1_000_000L % DELETE_EVERY == 0;
+    }
+}
@@ -0,0 +1,207 @@
+package com.pluralsight;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many threads call Ledger.add on a ledger with an open journal while readers ask for totals, balances,
+ * vendor rows and reports, so the whole write path runs concurrently: the store, the journal's group commit,
+ * the report cache and the vendor index, description index and rollups catching up.
+ * <p>
+ * Deposits are 1.00 and payments 0.01, so any totals a reader gets must have a count equal to the deposits in
+ * whole units plus the payments in cents; totals from a half applied row do not add up.
+ */
+class LedgerStressTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 3;
+    private static final int ROWS_PER_WRITER = 1500;
+    private static final int VENDORS = 5;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(2024, 12, 31);
+    /// a range inside the year that readers keep asking a report for, so cached reports meet new rows.
+    private static final LocalDate REPORT_START = LocalDate.of(2024, 3, 1);
+    private static final LocalDate REPORT_END = LocalDate.of(2024, 8, 31);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentAddsMatchTheFileAndTheRollups() throws Exception {
+        Path csv = dir.resolve("transactions.csv");
+        Files.createFile(csv);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        int total = WRITERS * ROWS_PER_WRITER;
+
+        try (Ledger book = new Ledger(csv)) {
+            book.load();
+            book.openJournal(JournalWriter.SyncPolicy.PER_RECORD, 5);
+            run(book, failures);
+            assertTrue(failures.isEmpty(), () -> String.join("\n", failures));
+
+            LedgerStore store = book.getStore();
+            assertEquals(total, store.size());
+            assertTotals(sum(store, FIRST_DAY, LAST_DAY, null), book.overall());
+            assertTotals(sum(store, FIRST_DAY, LAST_DAY, null), book.between(FIRST_DAY, LAST_DAY));
+            assertTotals(sum(store, REPORT_START, REPORT_END, null), book.between(REPORT_START, REPORT_END));
+            assertEquals(sum(store, FIRST_DAY, REPORT_END, null).getNetCents(), book.balanceAsOf(REPORT_END));
+            for (int vendor = 0; vendor < VENDORS; vendor++) {
+                LedgerAggregates.Totals expected = sum(store, FIRST_DAY, LAST_DAY, "Vendor " + vendor);
+                assertTotals(expected, book.getAggregates().vendor("Vendor " + vendor));
+                assertEquals(expected.getCount(), book.getVendorIndex().find("Vendor " + vendor).length);
+            }
+
+            /// the report may have been cached while rows were added, it must have caught up with all of them.
+            ReportCache.Report report = book.report("stress", REPORT_START, REPORT_END);
+            LedgerAggregates.Totals expected = sum(store, REPORT_START, REPORT_END, null);
+            assertTotals(expected, report.getTotals());
+            assertEquals(expected.getCount(), report.getRowCount());
+            assertEquals(sum(store, FIRST_DAY, REPORT_END, null).getNetCents(), report.getBalanceCents());
+            assertArrayEquals(new int[0], rowsOutside(store, report));
+        }
+
+        long lines;
+        try (Stream<String> file = Files.lines(csv)) {
+            lines = file.count();
+        }
+        assertEquals(total, lines);
+        try (Ledger reloaded = new Ledger(csv)) {
+            reloaded.load();
+            assertEquals(total, reloaded.getStore().size());
+            assertEquals(total, reloaded.overall().getCount());
+        }
+    }
+
+    /// start the writers and readers at once, wait for all of them.
+    private static void run(Ledger book, Queue<String> failures) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(WRITERS);
+        AtomicBoolean written = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int id = writer;
+            threads.add(new Thread(() -> {
+                await(start);
+                try {
+                    for (int seq = 0; seq < ROWS_PER_WRITER; seq++) {
+                        /// dates are scattered over the year, most adds are backdated.
+                        LocalDate date = FIRST_DAY.plusDays((seq * 37L + id * 11L) % 366);
+                        book.add(date, LocalTime.ofSecondOfDay(id * 3600L + seq % 3600), "Stress " + id,
+                                "Vendor " + seq % VENDORS, seq % 2 == 0 ? 100 : -1);
+                    }
+                } catch (IOException e) {
+                    failures.add("writer " + id + ": " + e);
+                } finally {
+                    writing.countDown();
+                }
+            }, "writer-" + writer));
+        }
+        for (int reader = 0; reader < READERS; reader++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                long seen = 0;
+                boolean last = false;
+                while (!last && failures.isEmpty()) {
+                    last = written.get();
+                    LedgerAggregates.Totals year = book.between(FIRST_DAY, LAST_DAY);
+                    checkWhole("between", year, failures);
+                    if (year.getCount() < seen) {
+                        failures.add("between went back from " + seen + " to " + year.getCount() + " rows");
+                    }
+                    seen = year.getCount();
+                    /// at most every row a deposit or every row a payment.
+                    long balance = book.balanceAsOf(LAST_DAY);
+                    if (balance < -WRITERS * ROWS_PER_WRITER || balance > 100L * WRITERS * ROWS_PER_WRITER) {
+                        failures.add("impossible balance " + balance);
+                    }
+                    checkWhole("vendor", book.getAggregates().vendor("Vendor 1"), failures);
+                    LedgerStore store = book.getStore();
+                    for (int row : book.getVendorIndex().find("Vendor 1")) {
+                        if (!store.getVendor(row).equals("Vendor 1")) {
+                            failures.add("vendor index row " + row + " is " + store.toCsvLine(row));
+                            break;
+                        }
+                    }
+                    ReportCache.Report report = book.report("stress", REPORT_START, REPORT_END);
+                    if (rowsOutside(store, report).length > 0) {
+                        failures.add("report holds rows outside its range");
+                    }
+                }
+            }, "reader-" + reader));
+        }
+
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failures.add(t.getName() + ": " + e));
+            thread.start();
+        }
+        start.countDown();
+        writing.await();
+        written.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /// deposits are 100 cents and payments 1, so the count of whole totals follows from the sums.
+    private static void checkWhole(String name, LedgerAggregates.Totals totals, Queue<String> failures) {
+        if (totals.getDepositCents() % 100 != 0
+                || totals.getCount() != totals.getDepositCents() / 100 - totals.getPaymentCents()) {
+            failures.add(name + " totals do not add up: " + totals.getCount() + " rows, deposits "
+                    + totals.getDepositCents() + ", payments " + totals.getPaymentCents());
+        }
+    }
+
+    /// the rows of the range summed one by one, of one vendor or of all with vendor null.
+    private static LedgerAggregates.Totals sum(LedgerStore store, LocalDate start, LocalDate end, String vendor) {
+        LedgerAggregates.Totals totals = new LedgerAggregates.Totals();
+        for (int row = 0; row < store.size(); row++) {
+            int day = store.getEpochDay(row);
+            if (day >= start.toEpochDay() && day <= end.toEpochDay()
+                    && (vendor == null || store.getVendor(row).equals(vendor))) {
+                totals.add(store.getCents(row));
+            }
+        }
+        return totals;
+    }
+
+    private static void assertTotals(LedgerAggregates.Totals expected, LedgerAggregates.Totals actual) {
+        assertEquals(expected.getCount(), actual.getCount(), "count");
+        assertEquals(expected.getDepositCents(), actual.getDepositCents(), "deposits");
+        assertEquals(expected.getPaymentCents(), actual.getPaymentCents(), "payments");
+    }
+
+    private static int[] rowsOutside(LedgerStore store, ReportCache.Report report) {
+        LedgerRenderer.RowSource rows = report.getRows();
+        return IntStream.range(0, rows.size()).map(rows::rowAt)
+                .filter(row -> store.getEpochDay(row) < REPORT_START.toEpochDay()
+                        || store.getEpochDay(row) > REPORT_END.toEpochDay())
+                .toArray();
+    }
+}